@@ -0,0 +1,161 @@
+package com.chatbot.be.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+/**
+ * In-JVM stand-in for the Python LLM service ({@code chatbot/service.py}).
+ * Implements {@code /api/llm/}, {@code /api/llm/stream} and
+ * {@code /api/llm/cancel} (single and batched) with the same payloads, and generates tokens at a
+ * configurable rate so backend overhead can be measured without a model.
+ */
+public final class StubLlmServer implements AutoCloseable {
+
+    /** Shape of the simulated generation. */
+    public record Settings(int tokens, double tokensPerSecond, Duration timeToFirstToken, double jitter) {
+
+        Duration interTokenDelay() {
+            double base = 1_000_000_000d / tokensPerSecond;
+            double factor = jitter <= 0 ? 1 : 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+            return Duration.ofNanos((long) (base * factor));
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Settings settings;
+    private final Map<String, Sinks.One<Boolean>> active = new ConcurrentHashMap<>();
+    private final String fullAnswer;
+    private final DisposableServer server;
+
+    private StubLlmServer(Settings settings) {
+        this.settings = settings;
+        StringBuilder answer = new StringBuilder();
+        for (int i = 0; i < settings.tokens(); i++) {
+            answer.append(i == 0 ? "" : " ").append(token(i));
+        }
+        this.fullAnswer = answer.toString();
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .post("/api/llm/", this::answer)
+                        .post("/api/llm/stream", this::stream)
+                        .post("/api/llm/cancel", this::cancel))
+                .bindNow();
+    }
+
+    public static StubLlmServer start(Settings settings) {
+        return new StubLlmServer(settings);
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> answer(HttpServerRequest req, HttpServerResponse res) {
+        return body(req).flatMap(json -> {
+            long total = settings.timeToFirstToken().toNanos()
+                    + (long) (settings.tokens() * 1_000_000_000d / settings.tokensPerSecond());
+            String out = writeJson(Map.of("answer", fullAnswer, "rag_score", 1.0));
+            return Mono.delay(Duration.ofNanos(total))
+                    .then(res.header("Content-Type", "application/json").sendString(Mono.just(out)).then());
+        });
+    }
+
+    private Mono<Void> stream(HttpServerRequest req, HttpServerResponse res) {
+        return body(req).flatMap(json -> {
+            String requestId = json.path("request_id").asText("stub");
+            Sinks.One<Boolean> cancelled = Sinks.one();
+            active.put(requestId, cancelled);
+            Flux<String> events = Flux.range(0, settings.tokens())
+                    .concatMap(i -> Mono.delay(i == 0 ? settings.timeToFirstToken() : settings.interTokenDelay())
+                            .thenReturn(event(Map.of("request_id", requestId, "chunk", token(i)))))
+                    .takeUntilOther(cancelled.asMono())
+                    .concatWith(Mono.fromSupplier(() -> active.containsKey(requestId)
+                            ? event(Map.of("request_id", requestId, "done", true))
+                            : event(Map.of("request_id", requestId, "cancelled", true))))
+                    .doFinally(s -> active.remove(requestId, cancelled));
+            return res.header("Content-Type", "text/event-stream")
+                    .header("Cache-Control", "no-cache")
+                    .sendString(events, StandardCharsets.UTF_8)
+                    .then();
+        });
+    }
+
+    private Mono<Void> cancel(HttpServerRequest req, HttpServerResponse res) {
+        return body(req).flatMap(json -> {
+            if (json.path("request_ids").isArray()) {
+                List<String> cancelled = new ArrayList<>();
+                List<String> unknown = new ArrayList<>();
+                for (JsonNode id : json.path("request_ids")) {
+                    Sinks.One<Boolean> sink = active.remove(id.asText());
+                    if (sink != null) {
+                        sink.tryEmitValue(true);
+                        cancelled.add(id.asText());
+                    } else {
+                        unknown.add(id.asText());
+                    }
+                }
+                return res.sendString(Mono.just(writeJson(Map.of("cancelled", cancelled, "unknown", unknown))))
+                        .then();
+            }
+            String requestId = json.path("request_id").asText(null);
+            Sinks.One<Boolean> sink = requestId == null ? null : active.remove(requestId);
+            if (sink == null) {
+                return res.status(404).sendString(Mono.just("{\"error\": \"unknown request_id\"}")).then();
+            }
+            sink.tryEmitValue(true);
+            return res.sendString(Mono.just(writeJson(Map.of("request_id", requestId, "cancelled", true)))).then();
+        });
+    }
+
+    private static Mono<JsonNode> body(HttpServerRequest req) {
+        return req.receive().aggregate().asString(StandardCharsets.UTF_8)
+                .defaultIfEmpty("{}")
+                .map(s -> {
+                    try {
+                        return MAPPER.readTree(s);
+                    } catch (Exception e) {
+                        return MAPPER.createObjectNode();
+                    }
+                });
+    }
+
+    private static String token(int i) {
+        return "tok" + i;
+    }
+
+    private static String event(Map<String, Object> payload) {
+        return "data: " + writeJson(payload) + "\n\n";
+    }
+
+    private static String writeJson(Object value) {
+        try {
+            return MAPPER.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
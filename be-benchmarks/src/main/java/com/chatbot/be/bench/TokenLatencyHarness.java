@@ -0,0 +1,310 @@
+package com.chatbot.be.bench;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import com.chatbot.be.BeApplication;
+import com.chatbot.be.config.WriteBehindProperties;
+import com.chatbot.be.model.Message;
+import com.chatbot.be.service.MessageWriteBehind;
+import com.chatbot.be.websocket.ReactiveChatServer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * End-to-end latency harness. Boots the real backend against a
+ * {@link StubLlmServer} and drives {@code /ws/chat} (ChatWebSocketHandler,
+ * or ReactiveChatWebSocketHandler with {@code --mode ws-reactive}) or
+ * {@code /api/v1/chat} (ChatbotController) with concurrent clients, then
+ * reports p50/p99/p999 time to first token, inter-token latency and
+ * throughput. Subtracting the stub's configured timings gives the backend's
+ * own overhead. Persistence is replaced by a no-op so no database is needed.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.chatbot.be.bench.TokenLatencyHarness \
+ *     --mode ws --clients 200 --requests 5 --tokens 200 --tps 50 --ttft 300ms --jitter 0.2
+ * </pre>
+ */
+public final class TokenLatencyHarness {
+
+    private final Map<String, String> opts;
+    private final Histogram ttft = new ConcurrentHistogram(3);
+    private final Histogram interToken = new ConcurrentHistogram(3);
+    private final Histogram requestLatency = new ConcurrentHistogram(3);
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private TokenLatencyHarness(Map<String, String> opts) {
+        this.opts = opts;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>(Map.of(
+                "mode", "ws", "clients", "100", "requests", "5", "tokens", "200",
+                "tps", "50", "ttft", "300ms", "jitter", "0.2", "timeout", "10m",
+                "protocol", "chat.v1.json-batch"));
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            opts.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new TokenLatencyHarness(opts).run(System.out);
+    }
+
+    private void run(PrintStream out) throws Exception {
+        StubLlmServer.Settings settings = new StubLlmServer.Settings(intOpt("tokens"),
+                Double.parseDouble(opts.get("tps")), DurationStyle.detectAndParse(opts.get("ttft")),
+                Double.parseDouble(opts.get("jitter")));
+        try (StubLlmServer stub = StubLlmServer.start(settings);
+                ConfigurableApplicationContext app = startBackend(stub.baseUrl())) {
+            int port = reactive() ? app.getBean(ReactiveChatServer.class).port()
+                    : ((WebServerApplicationContext) app).getWebServer().getPort();
+            long start = System.nanoTime();
+            boolean finished = "rest".equals(opts.get("mode")) ? runRest(port) : runWebSocket(port);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            report(out, settings, seconds, finished);
+        }
+    }
+
+    private ConfigurableApplicationContext startBackend(String upstreamUrl) {
+        // passed as arguments so they win over the application.properties packaged in be
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--chatbot.upstream.base-url=" + upstreamUrl,
+                // every request asks a distinct question, but make sure nothing is served from cache
+                "--chatbot.cache.answers.enabled=false",
+                "--spring.main.allow-bean-definition-overriding=true",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        if (reactive()) {
+            args.add("--chatbot.websocket.reactive.enabled=true");
+            args.add("--chatbot.websocket.reactive.port=0");
+        }
+        // any --chatbot.* option tunes the backend, e.g. --chatbot.websocket.coalescing.window 0
+        // every client connects from localhost, and admission would queue most of them;
+        // both can be turned back on with --chatbot.ratelimit.enabled true etc.
+        Map<String, String> backend = new LinkedHashMap<>(Map.of(
+                "chatbot.ratelimit.enabled", "false",
+                "chatbot.upstream.scheduler.enabled", "false"));
+        opts.forEach((k, v) -> {
+            if (k.startsWith("chatbot.")) {
+                backend.put(k, v);
+            }
+        });
+        backend.forEach((k, v) -> args.add("--" + k + "=" + v));
+        return new SpringApplicationBuilder(BeApplication.class, HarnessBeans.class).run(args.toArray(String[]::new));
+    }
+
+    private boolean reactive() {
+        return "ws-reactive".equals(opts.get("mode"));
+    }
+
+    /** Bean overrides for the harness; registered as a source, not scanned. */
+    static class HarnessBeans {
+        @Bean
+        MessageWriteBehind messageWriteBehind(SqlSessionFactory sqlSessionFactory, WriteBehindProperties props,
+                Scheduler blockingScheduler, MeterRegistry meterRegistry) {
+            return new MessageWriteBehind(sqlSessionFactory, props, blockingScheduler, meterRegistry) {
+                @Override
+                public Mono<Message> enqueue(Message message) {
+                    return Mono.just(message);
+                }
+            };
+        }
+    }
+
+    private boolean runWebSocket(int port) throws InterruptedException {
+        int clients = intOpt("clients");
+        int requests = intOpt("requests");
+        CountDownLatch done = new CountDownLatch(clients);
+        HttpClient http = HttpClient.newHttpClient();
+        for (int c = 0; c < clients; c++) {
+            WsClient client = new WsClient(c, requests, done);
+            http.newWebSocketBuilder().subprotocols(opts.get("protocol")).buildAsync(URI.create("ws://127.0.0.1:" + port + "/ws/chat"), client)
+                    .whenComplete((ws, err) -> {
+                        if (err != null) {
+                            errors.incrementAndGet();
+                            done.countDown();
+                        }
+                    });
+        }
+        return done.await(timeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** One socket asking {@code requests} questions back to back. */
+    private final class WsClient implements WebSocket.Listener {
+        private final int id;
+        private final int requests;
+        private final CountDownLatch done;
+        private final StringBuilder partial = new StringBuilder();
+        private int sent;
+        private long sentAt;
+        private long lastTokenAt;
+
+        WsClient(int id, int requests, CountDownLatch done) {
+            this.id = id;
+            this.requests = requests;
+            this.done = done;
+        }
+
+        @Override
+        public void onOpen(WebSocket ws) {
+            ws.request(1);
+            next(ws);
+        }
+
+        private void next(WebSocket ws) {
+            if (sent == requests) {
+                ws.sendClose(WebSocket.NORMAL_CLOSURE, "");
+                done.countDown();
+                return;
+            }
+            String requestId = "c" + id + "-r" + sent;
+            sent++;
+            sentAt = System.nanoTime();
+            lastTokenAt = 0;
+            ws.sendText("{\"requestId\": \"" + requestId + "\", \"message\": \"question " + requestId + "\"}", true);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                String frame = partial.toString();
+                partial.setLength(0);
+                onFrame(ws, frame);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        private void onFrame(WebSocket ws, String frame) {
+            long now = System.nanoTime();
+            int chunks = countChunks(frame);
+            if (chunks > 0) {
+                // one frame may carry several coalesced chunks
+                tokens.addAndGet(chunks);
+                if (lastTokenAt == 0) {
+                    ttft.recordValue((now - sentAt) / 1000);
+                } else {
+                    interToken.recordValue((now - lastTokenAt) / 1000);
+                }
+                lastTokenAt = now;
+            } else if (frame.contains("\"status\": \"done\"")) {
+                requestLatency.recordValue((now - sentAt) / 1000);
+                completed.incrementAndGet();
+                next(ws);
+            } else if (frame.contains("\"error\"") || frame.contains("\"status\": \"deadline_exceeded\"")) {
+                errors.incrementAndGet();
+                next(ws);
+            }
+        }
+
+        private int countChunks(String frame) {
+            int n = 0;
+            for (int i = frame.indexOf("\"chunk\""); i >= 0; i = frame.indexOf("\"chunk\"", i + 1)) {
+                n++;
+            }
+            return n;
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            errors.incrementAndGet();
+            done.countDown();
+        }
+    }
+
+    private boolean runRest(int port) throws InterruptedException {
+        int clients = intOpt("clients");
+        int requests = intOpt("requests");
+        CountDownLatch done = new CountDownLatch(clients);
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI uri = URI.create("http://127.0.0.1:" + port + "/api/v1/chat");
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (int r = 0; r < requests; r++) {
+                String question = "question c" + client + "-r" + r;
+                chain = chain.thenCompose(v -> {
+                    long start = System.nanoTime();
+                    HttpRequest req = HttpRequest.newBuilder(uri)
+                            .header("Content-Type", "text/plain; charset=utf-8")
+                            .POST(HttpRequest.BodyPublishers.ofString(question)).build();
+                    return http.sendAsync(req, HttpResponse.BodyHandlers.discarding()).thenAccept(res -> {
+                        if (res.statusCode() == 200) {
+                            requestLatency.recordValue((System.nanoTime() - start) / 1000);
+                            completed.incrementAndGet();
+                        } else {
+                            errors.incrementAndGet();
+                        }
+                    });
+                });
+            }
+            chain.whenComplete((v, err) -> {
+                if (err != null) {
+                    errors.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        return done.await(timeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void report(PrintStream out, StubLlmServer.Settings settings, double seconds, boolean finished) {
+        out.printf("mode=%s clients=%s requests/client=%s tokens/answer=%d%n", opts.get("mode"), opts.get("clients"),
+                opts.get("requests"), settings.tokens());
+        out.printf("stub: ttft=%s, inter-token=%.2f ms (+/- %.0f%%)%n", settings.timeToFirstToken(),
+                1000 / settings.tokensPerSecond(), settings.jitter() * 100);
+        if (!finished) {
+            out.println("WARNING: timed out before all clients finished");
+        }
+        out.printf("completed=%d errors=%d wall=%.2fs -> %.1f req/s, %.1f tokens/s%n", completed.get(), errors.get(),
+                seconds, completed.get() / seconds, tokens.get() / seconds);
+        out.println("                        p50        p99       p999        max   (ms)");
+        if (!"rest".equals(opts.get("mode"))) {
+            print(out, "time to first token", ttft);
+            // between frames: with coalescing on, one frame may carry several tokens
+            print(out, "inter-token latency", interToken);
+        }
+        print(out, "request latency", requestLatency);
+    }
+
+    private static void print(PrintStream out, String name, Histogram h) {
+        out.printf("%-20s %10.2f %10.2f %10.2f %10.2f%n", name, h.getValueAtPercentile(50) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0);
+    }
+
+    private int intOpt(String name) {
+        return Integer.parseInt(opts.get(name));
+    }
+
+    private long timeoutMillis() {
+        return DurationStyle.detectAndParse(opts.get("timeout")).toMillis();
+    }
+}
@@ -0,0 +1,77 @@
+package com.chatbot.be.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.chatbot.be.config.RateLimitProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Cost of {@link ChatRateLimiter#tryAcquire} per chat request, with four
+ * threads checking a population of {@code clients} distinct users and
+ * addresses. {@code granted} uses limits no client reaches; {@code rejected}
+ * limits every client has already used up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RateLimiterBenchmark {
+
+    @Param({ "100", "100000" })
+    private int clients;
+
+    private ChatRateLimiter loose;
+    private ChatRateLimiter exhausted;
+    private ChatRateLimiter.Client[] population;
+
+    @Setup
+    public void limiters() {
+        loose = limiter(Integer.MAX_VALUE / 2, Duration.ofNanos(1));
+        exhausted = limiter(1, Duration.ofHours(1));
+        population = new ChatRateLimiter.Client[clients];
+        for (int i = 0; i < clients; i++) {
+            population[i] = loose.client("user-" + i, "10." + (i >> 16 & 255) + "." + (i >> 8 & 255) + "." + (i & 255));
+            exhausted.tryAcquire(population[i]);
+        }
+    }
+
+    private static ChatRateLimiter limiter(int capacity, Duration refillPeriod) {
+        RateLimitProperties props = new RateLimitProperties();
+        props.setUser(new RateLimitProperties.Limit(capacity, refillPeriod));
+        props.setIp(new RateLimitProperties.Limit(capacity, refillPeriod));
+        return new ChatRateLimiter(props, new SimpleMeterRegistry());
+    }
+
+    private ChatRateLimiter.Client next() {
+        return population[ThreadLocalRandom.current().nextInt(clients)];
+    }
+
+    @Benchmark
+    public long granted() {
+        return loose.tryAcquire(next());
+    }
+
+    @Benchmark
+    public long rejected() {
+        return exhausted.tryAcquire(next());
+    }
+}
@@ -0,0 +1,78 @@
+package com.chatbot.be.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.chatbot.be.config.BlockingSchedulerConfig;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * {@code chats} concurrent blocking persistence calls, each stalled for
+ * {@code dbLatencyMs} as during a database latency spike, scheduled the way
+ * {@link MessageWriteBehind} and {@link MessageHistoryService} do it: on
+ * {@code boundedElastic} (10 threads per core) or on the virtual-thread
+ * scheduler of {@link BlockingSchedulerConfig}. Reports the time until all of
+ * them are done. The virtual variant needs Java 21 at run time; a real pool
+ * (Hikari) would still cap concurrent statements at its own size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class BlockingSchedulerBenchmark {
+
+    @Param({ "1000", "10000" })
+    int chats;
+
+    @Param({ "elastic", "virtual" })
+    String scheduler;
+
+    @Param({ "20" })
+    long dbLatencyMs;
+
+    private Scheduler blocking;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        blocking = "virtual".equals(scheduler) ? BlockingSchedulerConfig.virtualThreads()
+                : Schedulers.newBoundedElastic(Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                        Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "bench-elastic");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        blocking.dispose();
+    }
+
+    @Benchmark
+    public Long concurrentChats() {
+        return Flux.range(0, chats)
+                .flatMap(i -> Mono.fromCallable(this::blockingInsert).subscribeOn(blocking), chats)
+                .count()
+                .block();
+    }
+
+    private long blockingInsert() throws InterruptedException {
+        Thread.sleep(dbLatencyMs);
+        return 1L;
+    }
+}
@@ -0,0 +1,69 @@
+package com.chatbot.be.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.chatbot.be.model.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Upstream {@code /api/llm/} response to {@link Message}, as in
+ * {@link ChatbotService#processChatRequest}: JSON decoded to a
+ * {@code Map<String, Object>}, the answer pulled out and a message built.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageMappingBenchmark {
+
+    private static final TypeReference<Map<String, Object>> RESPONSE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String question = "Học phí đại học năm nay bao nhiêu?";
+    private final String cachedAnswer = "Học phí năm nay là 15 triệu đồng mỗi học kỳ.";
+    private final byte[] response = ("{\"answer\": \"Học phí năm nay là 15 triệu đồng mỗi học kỳ.\", "
+            + "\"rag_match\": \"Học phí bao nhiêu?\", \"rag_score\": 0.87, \"candidates\": ["
+            + "{\"question\": \"Học phí bao nhiêu?\", \"answer\": \"15 triệu mỗi học kỳ\"},"
+            + "{\"question\": \"Đóng học phí ở đâu?\", \"answer\": \"Phòng tài vụ\"}]}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public Message decodeAndMap() throws Exception {
+        Map<String, Object> resp = mapper.readValue(response, RESPONSE);
+        return toMessage(String.valueOf(resp.getOrDefault("answer", "")));
+    }
+
+    // cache-hit path: only the key is computed before the message is built
+    @Benchmark
+    public Message cachedAnswer(Blackhole bh) {
+        bh.consume(QuestionNormalizer.normalize(question));
+        return toMessage(cachedAnswer);
+    }
+
+    private Message toMessage(String answer) {
+        Message m = new Message();
+        m.setQuestion(question);
+        m.setAnswer(answer);
+        m.setTimestamp(LocalDateTime.now());
+        m.setConversationId(1);
+        return m;
+    }
+}
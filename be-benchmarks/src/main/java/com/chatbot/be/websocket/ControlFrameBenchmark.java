@@ -0,0 +1,69 @@
+package com.chatbot.be.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Control frames sent by {@link ChatWebSocketHandler} at the end of each
+ * stream, wrapped in a {@link TextMessage} whose payload length is taken as
+ * the send buffer does. {@code concat*} is the original string
+ * concatenation, kept as the baseline; {@code template*} uses
+ * {@link ControlFrames}, including the once-per-stream encoding of the id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlFrameBenchmark {
+
+    private final String requestId = "5f0c8a8e-3f7e-4a53-9a3b-5d1c2b1f9e77";
+
+    @Benchmark
+    public void concatDone(Blackhole bh) {
+        sized(bh, new TextMessage("{\"requestId\": \"" + requestId + "\", \"status\": \"done\"}"));
+    }
+
+    @Benchmark
+    public void concatCancelled(Blackhole bh) {
+        sized(bh, new TextMessage("{\"requestId\": \"" + requestId + "\", \"status\": \"cancelled\"}"));
+    }
+
+    @Benchmark
+    public void concatUpstreamUnavailable(Blackhole bh) {
+        sized(bh, new TextMessage("{\"requestId\": \"" + requestId
+                + "\", \"status\": \"error\", \"error\": \"upstream_unavailable\"}"));
+    }
+
+    @Benchmark
+    public void templateDone(Blackhole bh) {
+        sized(bh, new TextMessage(ControlFrames.done(ControlFrames.requestId(requestId))));
+    }
+
+    @Benchmark
+    public void templateCancelled(Blackhole bh) {
+        sized(bh, new TextMessage(ControlFrames.cancelled(ControlFrames.requestId(requestId))));
+    }
+
+    @Benchmark
+    public void templateUpstreamUnavailable(Blackhole bh) {
+        sized(bh, new TextMessage(ControlFrames.error(ControlFrames.requestId(requestId), "upstream_unavailable")));
+    }
+
+    private static void sized(Blackhole bh, TextMessage message) {
+        bh.consume(message);
+        bh.consume(message.getPayloadLength());
+    }
+}
@@ -0,0 +1,65 @@
+package com.chatbot.be.websocket;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Inbound frame parsing. {@code map*} is the original approach (untyped
+ * {@code Map} then casts), kept as the baseline; {@code typed*} is the
+ * {@link ChatCommandDecoder} used by {@link ChatWebSocketHandler}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadParsingBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ChatCommandDecoder decoder = new ChatCommandDecoder(16 * 1024, 4000);
+
+    private final String startFrame = "{\"requestId\": \"r-1718000000000\", \"message\": \"Học phí đại học năm nay bao nhiêu?\"}";
+    private final String cancelFrame = "{\"requestId\": \"r-1718000000000\", \"cancel\": true}";
+
+    @Benchmark
+    public void mapStart(Blackhole bh) throws Exception {
+        parse(startFrame, bh);
+    }
+
+    @Benchmark
+    public void mapCancel(Blackhole bh) throws Exception {
+        parse(cancelFrame, bh);
+    }
+
+    @Benchmark
+    public ChatCommand typedStart() {
+        return decoder.decode(startFrame);
+    }
+
+    @Benchmark
+    public ChatCommand typedCancel() {
+        return decoder.decode(cancelFrame);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void parse(String payload, Blackhole bh) throws Exception {
+        Map<String, Object> map = mapper.readValue(payload, Map.class);
+        bh.consume((String) map.get("requestId"));
+        bh.consume((Boolean) map.getOrDefault("cancel", false));
+        bh.consume((String) map.get("message"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.chatbot.be.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Work done by {@link ChatWebSocketHandler} for every SSE chunk: re-framing
+ * with the subscriber's requestId, wrapping in a {@link TextMessage} and
+ * appending the chunk text to the stream transcript. {@code leader} is the
+ * subscriber that started the upstream call, {@code follower} one sharing it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseForwardingBenchmark {
+
+    private final AnswerBufferPool pool = new AnswerBufferPool(16, 64 * 1024);
+    private final String leaderId = "r-1718000000000";
+    private final String followerId = "r-1718000000042";
+    private final String chunk = "{\"request_id\": \"" + leaderId + "\", \"chunk\": \"tr\\u01b0\\u1eddng\"}";
+
+    private StreamTranscript transcript;
+    private int appended;
+
+    @Setup(Level.Iteration)
+    public void newTranscript() {
+        transcript = new StreamTranscript(pool, "question", 1L);
+        appended = 0;
+    }
+
+    @Benchmark
+    public void leader(Blackhole bh) {
+        forward(leaderId, bh);
+    }
+
+    @Benchmark
+    public void follower(Blackhole bh) {
+        forward(followerId, bh);
+    }
+
+    private void forward(String requestId, Blackhole bh) {
+        String framed = SseEvents.withRequestId(chunk, requestId);
+        bh.consume(new TextMessage(framed));
+        transcript.append(framed);
+        // keep the transcript at a realistic answer size
+        if (++appended == 500) {
+            bh.consume(transcript.finish(false));
+            transcript = new StreamTranscript(pool, "question", 1L);
+            appended = 0;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.chatbot.be.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpInputMessage;
+import org.springframework.http.codec.ServerSentEventHttpMessageReader;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+
+/**
+ * Reading one streamed answer (200 token events, split into upstream chunks
+ * of {@code chunkSize} bytes) from the Python service's SSE body:
+ * {@code reader} is the {@code bodyToFlux(String.class)} path, {@code framer}
+ * {@link SseFramer} forwarding bytes (the reactive socket's JSON path) and
+ * {@code framerDecoded} {@link SseFramer} plus one decode per event (what
+ * {@link ChatStreams#open} hands to {@link ChatWebSocketHandler}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseFramingBenchmark {
+
+    private static final ResolvableType STRING = ResolvableType.forClass(String.class);
+
+    @Param({ "64", "4096" })
+    private int chunkSize;
+
+    private final NettyDataBufferFactory factory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private final ServerSentEventHttpMessageReader reader = new ServerSentEventHttpMessageReader(
+            StringDecoder.allMimeTypes());
+    private final List<byte[]> chunks = new ArrayList<>();
+
+    @Setup
+    public void body() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("data: {\"request_id\": \"r-1718000000000\", \"chunk\": \"trường").append(i).append("\"}\n\n");
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            chunks.add(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + chunkSize)));
+        }
+    }
+
+    private Flux<DataBuffer> upstream() {
+        return Flux.fromIterable(chunks).map(chunk -> {
+            DataBuffer buffer = factory.allocateBuffer(chunk.length);
+            return buffer.write(chunk);
+        });
+    }
+
+    @Benchmark
+    public void reader(Blackhole bh) {
+        ReactiveHttpInputMessage message = new ReactiveHttpInputMessage() {
+            @Override
+            public Flux<DataBuffer> getBody() {
+                return upstream();
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.TEXT_EVENT_STREAM);
+                return headers;
+            }
+        };
+        reader.read(STRING, message, Map.of()).doOnNext(bh::consume).blockLast();
+    }
+
+    @Benchmark
+    public void framer(Blackhole bh) {
+        SseFramer.frame(upstream(), 256 * 1024)
+                .doOnNext(event -> {
+                    bh.consume(event.readableByteCount());
+                    DataBufferUtils.release(event);
+                })
+                .blockLast();
+    }
+
+    @Benchmark
+    public void framerDecoded(Blackhole bh) {
+        SseFramer.frame(upstream(), 256 * 1024)
+                .doOnNext(event -> {
+                    bh.consume(event.toString(StandardCharsets.UTF_8));
+                    DataBufferUtils.release(event);
+                })
+                .blockLast();
+    }
+}
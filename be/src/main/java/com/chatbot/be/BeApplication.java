@@ -3,8 +3,10 @@ package com.chatbot.be;
 // import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 // @MapperScan("com.chatbot.be.mapper")
 public class BeApplication {
 
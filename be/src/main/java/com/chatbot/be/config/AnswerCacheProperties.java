@@ -0,0 +1,23 @@
+package com.chatbot.be.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Settings for the in-process cache of LLM answers keyed by normalized
+ * question.
+ */
+@Data
+@ConfigurationProperties(prefix = "chatbot.cache.answers")
+public class AnswerCacheProperties {
+    private boolean enabled = true;
+    // time-to-live of a regular answer
+    private Duration ttl = Duration.ofHours(6);
+    // time-to-live of an empty answer, kept short so it is retried soon
+    private Duration emptyAnswerTtl = Duration.ofMinutes(1);
+    // approximate memory bound (UTF-16 chars of key + answer, in bytes)
+    private long maxWeightBytes = 64L * 1024 * 1024;
+}
@@ -0,0 +1,33 @@
+package com.chatbot.be.config;
+
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Scheduler for blocking work: MyBatis calls and blocking WebSocket sends.
+ * By default this is Reactor's {@code boundedElastic}, capped at 10 threads
+ * per core, which becomes the ceiling when the database slows down. With
+ * {@code spring.threads.virtual.enabled=true} (Java 21, build with
+ * {@code -Pvirtual-threads}) every task gets its own virtual thread instead,
+ * and Tomcat handles requests on virtual threads as well.
+ */
+@Configuration
+public class BlockingSchedulerConfig {
+
+    @Bean
+    public Scheduler blockingScheduler(Environment environment) {
+        return Threading.VIRTUAL.isActive(environment) ? virtualThreads() : Schedulers.boundedElastic();
+    }
+
+    /** Unbounded scheduler running each task on a new virtual thread; requires Java 21. */
+    public static Scheduler virtualThreads() {
+        // trampolining keeps the tasks of one worker in order, as on a thread-backed worker
+        return Schedulers.fromExecutor(new VirtualThreadTaskExecutor("chatbot-blocking-"), true);
+    }
+}
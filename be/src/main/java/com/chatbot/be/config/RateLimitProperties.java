@@ -0,0 +1,37 @@
+package com.chatbot.be.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Limits on how fast one client may start chat requests, over REST and
+ * WebSocket alike. A request takes a token from its IP's bucket and, when it
+ * was authenticated, from its user's bucket too.
+ */
+@Data
+@ConfigurationProperties(prefix = "chatbot.ratelimit")
+public class RateLimitProperties {
+    private boolean enabled = true;
+    // per authenticated principal; anonymous requests only count against their IP
+    private Limit user = new Limit(10, Duration.ofSeconds(6));
+    // looser than per user: several users may share an address
+    private Limit ip = new Limit(30, Duration.ofSeconds(2));
+    // buckets that have been full for this long are dropped
+    private Duration idleTimeout = Duration.ofMinutes(5);
+    private Duration evictionInterval = Duration.ofMinutes(1);
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+        // requests that may be started back to back
+        private int capacity;
+        // time to earn back one request
+        private Duration refillPeriod;
+    }
+}
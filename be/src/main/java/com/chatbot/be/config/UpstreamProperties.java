@@ -0,0 +1,103 @@
+package com.chatbot.be.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Connection settings for the Python LLM service. With several
+ * {@code endpoints} requests are load-balanced across the workers; otherwise
+ * everything goes to {@code baseUrl}.
+ */
+@Data
+@ConfigurationProperties(prefix = "chatbot.upstream")
+public class UpstreamProperties {
+    private String baseUrl = "http://localhost:8000";
+    private List<String> endpoints = new ArrayList<>();
+    private Pool pool = new Pool();
+    private Balancer balancer = new Balancer();
+    private Breaker breaker = new Breaker();
+    private Scheduler scheduler = new Scheduler();
+    private Deadline deadline = new Deadline();
+    private Cancel cancel = new Cancel();
+
+    public List<String> resolvedEndpoints() {
+        return endpoints.isEmpty() ? List.of(baseUrl) : endpoints;
+    }
+
+    @Data
+    public static class Pool {
+        private int maxConnections = 500;
+        // requests allowed to wait for a connection; -1 means unbounded
+        private int pendingAcquireMaxCount = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        // close connections idle longer than this
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        // close connections older than this, even if busy recently
+        private Duration maxLifeTime = Duration.ofMinutes(10);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+        // speak HTTP/2 over cleartext (prior knowledge) instead of HTTP/1.1
+        private boolean h2c = false;
+    }
+
+    @Data
+    public static class Balancer {
+        // consecutive failures before an endpoint is taken out of rotation
+        private int failureThreshold = 5;
+        private Duration ejectionDuration = Duration.ofSeconds(30);
+        // after ejection, an endpoint's share of traffic ramps up over this window
+        private Duration slowStart = Duration.ofSeconds(30);
+    }
+
+    /** Per-endpoint circuit breaker over a count-based sliding window. */
+    @Data
+    public static class Breaker {
+        private int slidingWindowSize = 50;
+        // calls needed in the window before rates are evaluated
+        private int minimumNumberOfCalls = 20;
+        private float failureRateThreshold = 50;
+        // a call (or a stream's time to first chunk) slower than this counts as slow
+        private Duration slowCallDurationThreshold = Duration.ofSeconds(10);
+        private float slowCallRateThreshold = 80;
+        private Duration waitDurationInOpenState = Duration.ofSeconds(15);
+        private int permittedCallsInHalfOpenState = 5;
+    }
+
+    /** Admission of upstream calls, see {@code UpstreamScheduler}. */
+    @Data
+    public static class Scheduler {
+        private boolean enabled = true;
+        // upstream calls running at once, across all workers
+        private int maxConcurrent = 32;
+        // share of a user relative to the default weight of 1, keyed by user id (or IP for anonymous clients)
+        private Map<String, Integer> weights = new HashMap<>();
+    }
+
+    /** Time budget of one chat request, see {@code Deadlines}. */
+    @Data
+    public static class Deadline {
+        // when the client names none; zero leaves only max-timeout
+        private Duration defaultTimeout = Duration.ofMinutes(2);
+        // longer client timeouts are cut to this; zero means no cap
+        private Duration maxTimeout = Duration.ofMinutes(10);
+    }
+
+    /** Delivery of {@code /api/llm/cancel} calls, see {@code CancelDispatcher}. */
+    @Data
+    public static class Cancel {
+        // cancels for one worker within this window go out as one call; zero sends each at once
+        private Duration window = Duration.ofMillis(20);
+        private int maxBatchSize = 256;
+        // send {"request_ids": [...]}; off for workers that only take one request_id
+        private boolean batching = true;
+        // attempts per call, the first included, on connection errors and 5xx
+        private int maxAttempts = 3;
+        private Duration retryBackoff = Duration.ofMillis(200);
+    }
+}
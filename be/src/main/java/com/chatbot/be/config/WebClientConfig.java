@@ -1,14 +1,45 @@
 package com.chatbot.be.config;
 
+import java.util.function.Function;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
 @Configuration
 public class WebClientConfig {
-    
+
+    /**
+     * One connection pool for all calls to the LLM service. Pool gauges
+     * (active, idle, pending) are published under
+     * {@code reactor.netty.connection.provider.*{name=llm-upstream}}.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider llmConnectionProvider(UpstreamProperties props) {
+        UpstreamProperties.Pool pool = props.getPool();
+        return ConnectionProvider.builder("llm-upstream")
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictionInterval())
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClient.Builder webClientBuilder() {
-        return WebClient.builder();
+    public WebClient.Builder webClientBuilder(ConnectionProvider llmConnectionProvider, UpstreamProperties props) {
+        HttpClient httpClient = HttpClient.create(llmConnectionProvider)
+                .metrics(true, Function.identity());
+        if (props.getPool().isH2c()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+        return WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient));
     }
-}
\ No newline at end of file
+}
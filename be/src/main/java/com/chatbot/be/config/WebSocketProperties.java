@@ -0,0 +1,107 @@
+package com.chatbot.be.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import com.chatbot.be.websocket.OverflowPolicy;
+
+import lombok.Data;
+
+/**
+ * Settings for the chat WebSocket endpoint.
+ */
+@Data
+@ConfigurationProperties(prefix = "chatbot.websocket")
+public class WebSocketProperties {
+    private Inbound inbound = new Inbound();
+    private Outbound outbound = new Outbound();
+    private Coalescing coalescing = new Coalescing();
+    private Compression compression = new Compression();
+    private Reactive reactive = new Reactive();
+    private Resume resume = new Resume();
+    private Heartbeat heartbeat = new Heartbeat();
+
+    /** Limits on client frames; larger frames are answered with invalid-payload. */
+    @Data
+    public static class Inbound {
+        private DataSize maxFrameSize = DataSize.ofKilobytes(16);
+        // characters allowed in the question itself
+        private int maxMessageLength = 4000;
+    }
+
+    /** Per-session send buffer in front of the session. */
+    @Data
+    public static class Outbound {
+        // a single send taking longer than this closes the session
+        private Duration sendTimeLimit = Duration.ofSeconds(10);
+        // bytes allowed to wait in the buffer before the overflow policy applies
+        private DataSize bufferSizeLimit = DataSize.ofKilobytes(512);
+        private OverflowPolicy overflowPolicy = OverflowPolicy.CLOSE;
+    }
+
+    /**
+     * Merging of consecutive token frames for the subprotocols that allow it; a
+     * zero window sends every token on its own.
+     */
+    @Data
+    public static class Coalescing {
+        private Duration window = Duration.ofMillis(15);
+        private DataSize maxFrameSize = DataSize.ofKilobytes(4);
+    }
+
+    /**
+     * permessage-deflate on {@code /ws/chat}. Tomcat always deflates at the
+     * default level once the extension is negotiated; these settings decide
+     * whether it is and with which context-takeover parameters.
+     */
+    @Data
+    public static class Compression {
+        private boolean enabled = true;
+        // false answers with *_no_context_takeover: a fresh window per message,
+        // less memory per session but a worse ratio on small frames
+        private boolean serverContextTakeover = true;
+        private boolean clientContextTakeover = true;
+        // share of sessions whose outbound frames are deflated again on the side to measure ratio and CPU cost; 0 disables
+        private double metricsSampleRate = 0.05;
+    }
+
+    /**
+     * Optional reactive endpoint on its own Reactor Netty server, where socket
+     * demand is propagated to the upstream read.
+     */
+    @Data
+    public static class Reactive {
+        private boolean enabled = false;
+        private int port = 8081;
+        // concurrent streams one connection may run; further starts get too_many_streams
+        private int maxStreamsPerSession = 8;
+        // token events merged into one frame at most, within coalescing.window
+        private int maxEventsPerFrame = 64;
+    }
+
+    /** Streams kept after their connection drops so the client can resume them. */
+    @Data
+    public static class Resume {
+        // zero cancels the upstream as soon as the connection drops
+        private Duration gracePeriod = Duration.ofSeconds(30);
+        // latest events kept per stream; a client further behind has to ask again
+        private int bufferSize = 1024;
+    }
+
+    /**
+     * Ping/pong heartbeat and idle timeout of both endpoints; servlet sessions
+     * are checked on a hashed timing wheel.
+     */
+    @Data
+    public static class Heartbeat {
+        // no pong or frame within one interval after a ping closes the session; zero disables
+        private Duration pingInterval = Duration.ofSeconds(25);
+        // no client frame and no running stream for this long closes the session; zero disables
+        private Duration idleTimeout = Duration.ofMinutes(10);
+        // wheel resolution; timeouts fire up to one tick late
+        private Duration tickDuration = Duration.ofMillis(100);
+        private int ticksPerWheel = 512;
+    }
+}
@@ -0,0 +1,35 @@
+package com.chatbot.be.config;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+/**
+ * Tuning for the write-behind stage that batches chat messages before they
+ * reach the {@code messages} table.
+ */
+@Data
+@ConfigurationProperties(prefix = "chatbot.persistence.write-behind")
+public class WriteBehindProperties {
+    // max messages waiting to be written; producers are slowed down beyond this
+    private int queueCapacity = 10_000;
+    // flush as soon as this many messages are pending
+    private int batchSize = 500;
+    // rows per multi-row INSERT statement inside one batch
+    private int rowsPerStatement = 100;
+    // flush at the latest this long after the first pending message arrived
+    private Duration flushInterval = Duration.ofMillis(200);
+    // how long a producer waits for room when the queue is full
+    private Duration offerTimeout = Duration.ofSeconds(2);
+    // how long shutdown waits for the final flush
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+    // attempts per batch, the first included, before it is written row by row
+    private int maxAttempts = 3;
+    // wait before the first retry, doubled for each further one
+    private Duration retryBackoff = Duration.ofMillis(200);
+    // messages that could not be stored are appended here as JSON lines
+    private Path deadLetterFile = Path.of("write-behind-dead-letter.jsonl");
+}
@@ -1,27 +1,70 @@
 package com.chatbot.be.controller;
 
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import com.chatbot.be.model.Message;
+import com.chatbot.be.ratelimit.ChatRateLimiter;
+import com.chatbot.be.ratelimit.RateLimitedException;
 import com.chatbot.be.service.ChatbotService;
+import com.chatbot.be.upstream.DeadlineExceededException;
+import com.chatbot.be.upstream.Deadlines;
 
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import jakarta.servlet.http.HttpServletRequest;
 import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/api/v1")
 public class ChatbotController {
     private final ChatbotService chatbotService;
+    private final ChatRateLimiter rateLimiter;
+    private final Deadlines deadlines;
 
-    public ChatbotController(ChatbotService chatbotService) {
+    public ChatbotController(ChatbotService chatbotService, ChatRateLimiter rateLimiter, Deadlines deadlines) {
         this.chatbotService = chatbotService;
+        this.rateLimiter = rateLimiter;
+        this.deadlines = deadlines;
     }
 
     @PostMapping("/chat")
-    public Mono<ResponseEntity<Message>> chat(@RequestBody String message) {
-        return chatbotService.processChatRequest(message).map(response -> ResponseEntity.ok(response))
+    public Mono<ResponseEntity<Message>> chat(@RequestBody String message, HttpServletRequest request) {
+        ChatRateLimiter.Client client = rateLimiter.client(request.getUserPrincipal(), request.getRemoteAddr());
+        long retryAfter = rateLimiter.tryAcquire(client);
+        if (retryAfter > 0) {
+            throw new RateLimitedException(retryAfter);
+        }
+        return chatbotService.processChatRequest(message, client.id(),
+                deadlines.start(request.getHeader(Deadlines.TIMEOUT_HEADER))).map(response -> ResponseEntity.ok(response))
                 .defaultIfEmpty(ResponseEntity.badRequest().build());
     }
+
+    // every upstream breaker is open: fail fast instead of waiting on a dead socket
+    @ExceptionHandler(CallNotPermittedException.class)
+    public ResponseEntity<Map<String, String>> upstreamUnavailable(CallNotPermittedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("error", "upstream_unavailable", "detail", e.getMessage()));
+    }
+
+    // the request's deadline passed; the upstream call has been cancelled
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<Map<String, String>> deadlineExceeded(DeadlineExceededException e) {
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(Map.of("error", "deadline_exceeded"));
+    }
+
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<Map<String, Object>> rateLimited(RateLimitedException e) {
+        long retryAfter = e.getRetryAfterMillis();
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                // whole seconds, rounded up, as the header requires
+                .header(HttpHeaders.RETRY_AFTER, Long.toString((retryAfter + 999) / 1000))
+                .body(Map.of("error", "rate_limited", "retry_after_ms", retryAfter));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.chatbot.be.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.chatbot.be.model.Message;
+import com.chatbot.be.service.MessageHistoryService;
+
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("/api/v1/conversations")
+public class ConversationController {
+    private final MessageHistoryService messageHistoryService;
+
+    public ConversationController(MessageHistoryService messageHistoryService) {
+        this.messageHistoryService = messageHistoryService;
+    }
+
+    /**
+     * One page of a conversation, oldest first, streamed as NDJSON. Pass the
+     * id of the last message received as {@code after} to get the next page.
+     */
+    @GetMapping(value = "/{id}/messages", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Message> messages(@PathVariable("id") long conversationId,
+            @RequestParam(name = "after", defaultValue = "0") long after,
+            @RequestParam(name = "limit", defaultValue = "" + MessageHistoryService.DEFAULT_LIMIT) int limit) {
+        return messageHistoryService.messagesAfter(conversationId, after, limit);
+    }
+}
@@ -1,10 +1,20 @@
 package com.chatbot.be.mapper;
 
+import java.util.List;
+
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 import com.chatbot.be.model.Message;
 
 @Mapper
 public interface MessageMapper {
     void insertMessage(Message message);
+
+    void insertMessages(@Param("messages") List<Message> messages);
+
+    // keyset page: messages of a conversation with id > afterId, oldest first
+    Cursor<Message> selectMessagesAfter(@Param("conversationId") long conversationId,
+            @Param("afterId") long afterId, @Param("limit") int limit);
 }
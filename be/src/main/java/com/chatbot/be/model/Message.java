@@ -9,6 +9,8 @@ public class Message {
     private long id;
     private String question;
     private String answer;
+    // true when the stream was cancelled or failed before the answer completed
+    private boolean partial;
     private LocalDateTime timestamp;
     private long conversationId;
 }
@@ -0,0 +1,119 @@
+package com.chatbot.be.ratelimit;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.chatbot.be.config.RateLimitProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Per-user and per-IP limits on starting chat requests, checked by
+ * {@code ChatbotController} and both chat socket handlers before anything
+ * is sent upstream. See {@link RateLimitProperties}. Rejections are counted
+ * as {@code chatbot.ratelimit.rejected{scope=user|ip}}; the number of live
+ * buckets is {@code chatbot.ratelimit.buckets{scope}}.
+ * <p>
+ * The user is only ever an authenticated principal, never something the
+ * client says about itself. Nothing in this service authenticates yet, so
+ * in practice every request is charged to its IP alone.
+ */
+@Component
+public class ChatRateLimiter {
+
+    /** Who a request is charged to; {@code user} is null unless the request was authenticated. */
+    public record Client(String user, String ip) {
+
+        /** The user, or the address of an anonymous client. */
+        public String id() {
+            return user != null ? user : ip;
+        }
+    }
+
+    private final boolean enabled;
+    private final TokenBuckets users;
+    private final TokenBuckets ips;
+    private final Counter userRejections;
+    private final Counter ipRejections;
+    private final Disposable eviction;
+
+    public ChatRateLimiter(RateLimitProperties props, MeterRegistry meterRegistry) {
+        this.enabled = props.isEnabled();
+        this.users = new TokenBuckets(props.getUser().getCapacity(), props.getUser().getRefillPeriod());
+        this.ips = new TokenBuckets(props.getIp().getCapacity(), props.getIp().getRefillPeriod());
+        this.userRejections = meterRegistry.counter("chatbot.ratelimit.rejected", "scope", "user");
+        this.ipRejections = meterRegistry.counter("chatbot.ratelimit.rejected", "scope", "ip");
+        Gauge.builder("chatbot.ratelimit.buckets", users, TokenBuckets::size).tag("scope", "user")
+                .register(meterRegistry);
+        Gauge.builder("chatbot.ratelimit.buckets", ips, TokenBuckets::size).tag("scope", "ip")
+                .register(meterRegistry);
+        long idleNanos = props.getIdleTimeout().toNanos();
+        long interval = props.getEvictionInterval().toMillis();
+        this.eviction = enabled
+                ? Schedulers.parallel().schedulePeriodically(() -> {
+                    long now = System.nanoTime();
+                    users.evictIdle(now, idleNanos);
+                    ips.evictIdle(now, idleNanos);
+                }, interval, interval, TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    /** {@code principal} is the authenticated user, or null for an anonymous request. */
+    public Client client(Principal principal, String ip) {
+        return new Client(principal == null ? null : principal.getName(), ip);
+    }
+
+    /** The client of a WebSocket handshake. */
+    public Client client(Principal principal, InetSocketAddress remoteAddress) {
+        return client(principal, remoteAddress == null ? null : remoteAddress.getHostString());
+    }
+
+    /**
+     * Take a token for one chat request. Returns 0 if the request may go
+     * ahead, otherwise the milliseconds (at least 1) until it may be retried.
+     */
+    public long tryAcquire(Client client) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (client.ip() != null) {
+            long wait = ips.tryAcquire(client.ip(), now);
+            if (wait > 0) {
+                ipRejections.increment();
+                return toMillis(wait);
+            }
+        }
+        if (client.user() != null) {
+            long wait = users.tryAcquire(client.user(), now);
+            if (wait > 0) {
+                // the request does not go ahead; the address keeps its token
+                if (client.ip() != null) {
+                    ips.refund(client.ip());
+                }
+                userRejections.increment();
+                return toMillis(wait);
+            }
+        }
+        return 0;
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos + 999_999));
+    }
+
+    @PreDestroy
+    void stop() {
+        if (eviction != null) {
+            eviction.dispose();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.chatbot.be.ratelimit;
+
+/**
+ * A chat request refused by the {@link ChatRateLimiter}; the client may try
+ * again after {@link #getRetryAfterMillis()}.
+ */
+public class RateLimitedException extends RuntimeException {
+
+    private final long retryAfterMillis;
+
+    public RateLimitedException(long retryAfterMillis) {
+        super("rate limited, retry after " + retryAfterMillis + " ms", null, false, false);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,75 @@
+package com.chatbot.be.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets keyed by client, one limit for all of them. A bucket is a
+ * single {@code long} updated by CAS: the {@link System#nanoTime} at which it
+ * will be full again (the GCRA form of a token bucket). Refill is lazy,
+ * worked out from the time of the next acquire, so there is no timer per bucket, and taking a
+ * token is one map lookup plus one CAS. The map is a
+ * {@link ConcurrentHashMap}, whose lookups take no lock and whose inserts
+ * only lock one bin.
+ */
+final class TokenBuckets {
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final long nanosPerToken;
+    // how far ahead "full again" may be: the whole capacity lent out
+    private final long burstNanos;
+
+    TokenBuckets(int capacity, Duration refillPeriod) {
+        if (capacity < 1 || refillPeriod.isNegative() || refillPeriod.isZero()) {
+            throw new IllegalArgumentException("capacity and refill period must be positive");
+        }
+        this.nanosPerToken = refillPeriod.toNanos();
+        this.burstNanos = Math.multiplyExact(nanosPerToken, capacity);
+    }
+
+    /**
+     * Take a token from {@code key}'s bucket at time {@code now}. Returns 0
+     * if one was taken, otherwise the nanoseconds until the next one is
+     * available.
+     */
+    long tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            // a bucket full since some time ago is simply full (compared as differences, nanoTime may wrap)
+            long next = (fullAt - now > 0 ? fullAt : now) + nanosPerToken;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /** Give back a token taken by {@link #tryAcquire} for a request that did not go ahead. */
+    void refund(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.addAndGet(-nanosPerToken);
+        }
+    }
+
+    /**
+     * Drop buckets that have been full for at least {@code idleNanos}; a full
+     * bucket is the same as none. An acquire racing the removal may take its
+     * token from the dropped bucket, so a client can gain at most one token.
+     */
+    void evictIdle(long now, long idleNanos) {
+        buckets.values().removeIf(bucket -> now - bucket.get() >= idleNanos);
+    }
+
+    int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,75 @@
+package com.chatbot.be.service;
+
+import java.util.Optional;
+
+import org.springframework.stereotype.Component;
+
+import com.chatbot.be.config.AnswerCacheProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Cache of upstream answers keyed by {@link QuestionNormalizer normalized}
+ * question. Backed by Caffeine, whose W-TinyLFU admission keeps the frequently
+ * asked questions resident under a weight (memory) bound. Each entry carries
+ * its own TTL. Hit/miss/eviction counters are published as
+ * {@code cache.*{cache=chatbot.answers}}.
+ */
+@Component
+public class AnswerCache {
+
+    private record Entry(String answer, long ttlNanos) {
+    }
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long emptyAnswerTtlNanos;
+    private final Cache<String, Entry> cache;
+
+    public AnswerCache(AnswerCacheProperties props, MeterRegistry meterRegistry) {
+        this.enabled = props.isEnabled();
+        this.ttlNanos = props.getTtl().toNanos();
+        this.emptyAnswerTtlNanos = props.getEmptyAnswerTtl().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(props.getMaxWeightBytes())
+                .weigher((String key, Entry e) -> 2 * (key.length() + e.answer().length()) + 64)
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry e, long currentTime) {
+                        return e.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry e, long currentTime, long currentDuration) {
+                        return e.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry e, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "chatbot.answers");
+    }
+
+    public Optional<String> get(String normalizedQuestion) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Entry e = cache.getIfPresent(normalizedQuestion);
+        return e == null ? Optional.empty() : Optional.of(e.answer());
+    }
+
+    public void put(String normalizedQuestion, String answer) {
+        if (!enabled || normalizedQuestion.isEmpty()) {
+            return;
+        }
+        cache.put(normalizedQuestion, new Entry(answer, answer.isEmpty() ? emptyAnswerTtlNanos : ttlNanos));
+    }
+}
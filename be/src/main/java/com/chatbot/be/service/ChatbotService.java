@@ -5,43 +5,61 @@ import java.util.Collections;
 import java.util.Map;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
-import com.chatbot.be.mapper.MessageMapper;
 import com.chatbot.be.model.Message;
+import com.chatbot.be.upstream.Deadline;
+import com.chatbot.be.upstream.UpstreamBalancer;
+import com.chatbot.be.upstream.UpstreamScheduler;
 
 import org.springframework.core.ParameterizedTypeReference;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 @Service
 public class ChatbotService {
-    private final WebClient webClient;
-    private final MessageMapper messageMapper;
+    private final UpstreamBalancer upstream;
+    private final UpstreamScheduler scheduler;
+    private final MessageWriteBehind messageWriteBehind;
+    private final AnswerCache answerCache;
+    private final SingleFlight<String> inFlightAnswers = new SingleFlight<>();
 
-    public ChatbotService(WebClient.Builder webClientBuilder, MessageMapper messageMapper) {
-        // baseUrl có thể lấy từ application.properties;
-        // tạm đặt localhost:8000
-        this.webClient = webClientBuilder.baseUrl("http://localhost:8000").build();
-        this.messageMapper = messageMapper;
+    public ChatbotService(UpstreamBalancer upstream, UpstreamScheduler scheduler,
+            MessageWriteBehind messageWriteBehind, AnswerCache answerCache) {
+        // endpoint lấy từ chatbot.upstream.*, cân bằng tải giữa các worker
+        this.upstream = upstream;
+        this.scheduler = scheduler;
+        this.messageWriteBehind = messageWriteBehind;
+        this.answerCache = answerCache;
     }
 
-    public Mono<Message> processChatRequest(String message) {
-        return webClient.post().uri("/api/llm/").contentType(MediaType.APPLICATION_JSON)
+    /**
+     * {@code user} is who the upstream call is charged to by the
+     * {@link UpstreamScheduler}. Past {@code deadline} the wait is given up
+     * with a {@code DeadlineExceededException}; the shared call is cancelled
+     * once nobody else waits for it.
+     */
+    public Mono<Message> processChatRequest(String message, String user, Deadline deadline) {
+        String cacheKey = QuestionNormalizer.normalize(message);
+        Mono<String> answer = answerCache.get(cacheKey).map(Mono::just)
+                // coalesced on the exact question; only the cache folds diacritics
+                .orElseGet(() -> deadline.bound(inFlightAnswers.mono(message.strip(),
+                        () -> fetchAnswer(message, user, deadline).doOnNext(a -> answerCache.put(cacheKey, a)))));
+        return answer.map(a -> {
+            Message m = new Message();
+            m.setQuestion(message);
+            m.setAnswer(a);
+            m.setTimestamp(LocalDateTime.now());
+            m.setConversationId(1);
+            return m;
+        }) // persist qua write-behind: gom batch, ghi nhiều dòng một lần
+                .flatMap(messageWriteBehind::enqueue);
+    }
+
+    private Mono<String> fetchAnswer(String message, String user, Deadline deadline) {
+        return scheduler.mono(user, UpstreamScheduler.Priority.STANDARD, () -> upstream.mono(webClient -> webClient
+                .post().uri("/api/llm/").contentType(MediaType.APPLICATION_JSON)
+                .headers(deadline::writeTo)
                 .bodyValue(Collections.singletonMap("message", message)).retrieve()
                 .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {
-                }).map((Map<String, Object> resp) -> {
-                    String answer = String.valueOf(resp.getOrDefault("answer", ""));
-                    Message m = new Message();
-                    m.setQuestion(message);
-                    m.setAnswer(answer);
-                    m.setTimestamp(LocalDateTime.now());
-                    m.setConversationId(1);
-                    return m;
-                }) // persist bằng MyBatis (blocking) trên boundedElastic scheduler
-                .flatMap(m -> Mono.fromCallable(() -> {
-                    messageMapper.insertMessage(m);
-                    return m;
-                }).subscribeOn(Schedulers.boundedElastic()));
+                }))).map((Map<String, Object> resp) -> String.valueOf(resp.getOrDefault("answer", "")));
     }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.chatbot.be.service;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.stereotype.Service;
+
+import com.chatbot.be.mapper.MessageMapper;
+import com.chatbot.be.model.Message;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Read path for conversation history. Pages are addressed by the last seen
+ * message id (keyset pagination) and rows are streamed from a MyBatis
+ * {@link Cursor}, so a page is never materialized as a list.
+ */
+@Service
+public class MessageHistoryService {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final Scheduler blockingScheduler;
+
+    public MessageHistoryService(SqlSessionFactory sqlSessionFactory, Scheduler blockingScheduler) {
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    public Flux<Message> messagesAfter(long conversationId, long afterId, int limit) {
+        int pageSize = limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+        // the session (and its connection) stays open only while the cursor is read
+        return Flux.using(sqlSessionFactory::openSession,
+                session -> Flux.fromIterable(openCursor(session, conversationId, afterId, pageSize)),
+                SqlSession::close)
+                .subscribeOn(blockingScheduler);
+    }
+
+    private static Cursor<Message> openCursor(SqlSession session, long conversationId, long afterId, int limit) {
+        return session.getMapper(MessageMapper.class).selectMessagesAfter(conversationId, Math.max(afterId, 0), limit);
+    }
+}
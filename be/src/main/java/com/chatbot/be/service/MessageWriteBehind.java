@@ -0,0 +1,244 @@
+package com.chatbot.be.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.stereotype.Component;
+
+import com.chatbot.be.config.WriteBehindProperties;
+import com.chatbot.be.mapper.MessageMapper;
+import com.chatbot.be.model.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Write-behind buffer for chat messages. Messages are queued in memory and a
+ * single flusher thread writes them as multi-row inserts through a MyBatis
+ * {@link ExecutorType#BATCH} session, either when {@code batchSize} messages
+ * are pending or when the oldest one has waited {@code flushInterval}.
+ * <p>
+ * When the queue is full callers wait (off the calling thread) for up to
+ * {@code offerTimeout} before the write is rejected. Pending messages are
+ * flushed on shutdown.
+ * <p>
+ * A failed batch is retried {@code maxAttempts} times with backoff, then
+ * written row by row so one bad message does not take the others with it.
+ * Messages that still fail are appended to {@code deadLetterFile} for
+ * replay and counted as {@code chatbot.persistence.write-behind.failed};
+ * retries are counted as {@code .retries}.
+ */
+@Slf4j
+@Component
+public class MessageWriteBehind {
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final WriteBehindProperties props;
+    private final BlockingQueue<Message> queue;
+    private final Thread flusher;
+    private final Scheduler blockingScheduler;
+    private final ObjectMapper deadLetterMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final Counter retries;
+    private final Counter failed;
+
+    private volatile boolean running;
+
+    public MessageWriteBehind(SqlSessionFactory sqlSessionFactory, WriteBehindProperties props,
+            Scheduler blockingScheduler, MeterRegistry meterRegistry) {
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.retries = meterRegistry.counter("chatbot.persistence.write-behind.retries");
+        this.failed = meterRegistry.counter("chatbot.persistence.write-behind.failed");
+        this.blockingScheduler = blockingScheduler;
+        this.props = props;
+        this.queue = new ArrayBlockingQueue<>(props.getQueueCapacity());
+        this.flusher = new Thread(this::runFlusher, "message-write-behind");
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        flusher.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        flusher.join(props.getShutdownTimeout().toMillis());
+        if (flusher.isAlive()) {
+            log.warn("Write-behind flusher did not finish within {}, {} messages pending", props.getShutdownTimeout(),
+                    queue.size());
+            return;
+        }
+        // offered by an enqueue that saw running just before it was cleared
+        List<Message> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        flush(rest);
+    }
+
+    /**
+     * Queue a message for persistence. Completes immediately when there is
+     * room; otherwise waits on the blocking scheduler for the flusher to drain.
+     */
+    public Mono<Message> enqueue(Message message) {
+        if (!running) {
+            // late writes during shutdown go straight to the database
+            return Mono.fromCallable(() -> {
+                flush(List.of(message));
+                return message;
+            }).subscribeOn(blockingScheduler);
+        }
+        if (queue.offer(message)) {
+            if (!running && queue.remove(message)) {
+                // stopped meanwhile and neither the flusher nor stop() took it
+                return Mono.fromCallable(() -> {
+                    flush(List.of(message));
+                    return message;
+                }).subscribeOn(blockingScheduler);
+            }
+            return Mono.just(message);
+        }
+        return Mono.fromCallable(() -> {
+            if (!queue.offer(message, props.getOfferTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("message write-behind queue is full");
+            }
+            return message;
+        }).subscribeOn(blockingScheduler);
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    private void runFlusher() {
+        final int batchSize = props.getBatchSize();
+        final long intervalNanos = props.getFlushInterval().toNanos();
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + intervalNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Message> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long backoff = props.getRetryBackoff().toMillis();
+        for (int attempt = 1;; attempt++) {
+            try {
+                insert(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= props.getMaxAttempts()) {
+                    log.error("Failed to persist {} chat messages after {} attempts; writing them one by one",
+                            batch.size(), attempt, e);
+                    break;
+                }
+                log.warn("Failed to persist {} chat messages (attempt {}), retrying in {} ms", batch.size(), attempt,
+                        backoff, e);
+            }
+            retries.increment();
+            if (!sleep(backoff)) {
+                break;
+            }
+            backoff *= 2;
+        }
+        List<Message> rejected = new ArrayList<>();
+        for (Message m : batch) {
+            try {
+                insert(List.of(m));
+            } catch (RuntimeException e) {
+                rejected.add(m);
+            }
+        }
+        if (!rejected.isEmpty()) {
+            deadLetter(rejected);
+        }
+    }
+
+    private void insert(List<Message> batch) {
+        final int rowsPerStatement = props.getRowsPerStatement();
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            MessageMapper mapper = session.getMapper(MessageMapper.class);
+            for (int from = 0; from < batch.size(); from += rowsPerStatement) {
+                mapper.insertMessages(batch.subList(from, Math.min(batch.size(), from + rowsPerStatement)));
+            }
+            session.flushStatements();
+            session.commit();
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void deadLetter(List<Message> messages) {
+        failed.increment(messages.size());
+        try (BufferedWriter out = Files.newBufferedWriter(props.getDeadLetterFile(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Message m : messages) {
+                out.write(deadLetterMapper.writeValueAsString(m));
+                out.newLine();
+            }
+            log.error("Wrote {} chat messages that could not be stored to {}", messages.size(),
+                    props.getDeadLetterFile());
+        } catch (IOException e) {
+            // last resort: the log is the only copy left
+            log.error("Lost {} chat messages, dead-letter file {} not writable: {}", messages.size(),
+                    props.getDeadLetterFile(), messages, e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.chatbot.be.service;
+
+import java.text.Normalizer;
+
+/**
+ * Folds a question into a cache key: lower case, Vietnamese diacritics removed
+ * (including đ/Đ), runs of whitespace collapsed to one space and trimmed.
+ */
+public final class QuestionNormalizer {
+
+    private QuestionNormalizer() {
+    }
+
+    public static String normalize(String question) {
+        if (question == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(question, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == 'đ' || c == 'Đ') {
+                c = 'd';
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package com.chatbot.be.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Coalesces identical in-flight upstream calls. The first subscriber for a key
+ * starts the upstream; subscribers arriving while it is running share it and
+ * receive every element from the start (replayed). The upstream is cancelled
+ * only when the last subscriber cancels, and the key is released as soon as
+ * the upstream terminates.
+ */
+public class SingleFlight<K> {
+
+    private final Map<K, Flux<?>> inFlight = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> flux(K key, Supplier<? extends Flux<T>> upstream) {
+        return Flux.defer(() -> (Flux<T>) inFlight.computeIfAbsent(key, k -> share(k, upstream.get())));
+    }
+
+    public <T> Mono<T> mono(K key, Supplier<? extends Mono<T>> upstream) {
+        return flux(key, () -> upstream.get().flux()).singleOrEmpty();
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private <T> Flux<T> share(K key, Flux<T> source) {
+        Flux<?>[] self = new Flux<?>[1];
+        // release the key before the terminal signal reaches subscribers
+        Runnable release = () -> inFlight.remove(key, self[0]);
+        Flux<T> shared = source.doOnTerminate(release).doOnCancel(release).replay().refCount(1);
+        self[0] = shared;
+        return shared;
+    }
+}
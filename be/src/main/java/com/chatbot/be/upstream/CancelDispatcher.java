@@ -0,0 +1,202 @@
+package com.chatbot.be.upstream;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.chatbot.be.config.UpstreamProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
+
+/**
+ * Delivers {@code /api/llm/cancel} calls for the {@link UpstreamBalancer}.
+ * Cancels for one worker are collected for {@code window} (or until
+ * {@code maxBatchSize}) and sent as one {@code {"request_ids": [...]}} call;
+ * the same id asked for twice in a window goes out once. A worker that
+ * rejects the batch form with a 4xx is sent one {@code {"request_id"}} call
+ * per id from then on. Connection errors and 5xx are retried with backoff up
+ * to {@code maxAttempts}; an id the worker does not know (404) has already
+ * finished and counts as cancelled.
+ * <p>
+ * {@code chatbot.upstream.cancel.latency} is the time from asking to the
+ * worker's answer, per id. Also {@code .calls{kind=batch|single}},
+ * {@code .coalesced}, {@code .retries} and {@code .failed} (ids given up on).
+ */
+@Slf4j
+final class CancelDispatcher {
+
+    // bound on the per-id calls in flight to one worker after a fallback
+    private static final int SINGLE_CONCURRENCY = 16;
+
+    private final Map<UpstreamEndpoint, Target> targets = new IdentityHashMap<>();
+    private final Scheduler timer;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Timer latency;
+    private final Counter batchCalls;
+    private final Counter singleCalls;
+    private final Counter coalesced;
+    private final Counter retries;
+    private final Counter failed;
+
+    CancelDispatcher(List<UpstreamEndpoint> endpoints, UpstreamProperties.Cancel cfg, Scheduler timer,
+            MeterRegistry meterRegistry) {
+        for (UpstreamEndpoint e : endpoints) {
+            targets.put(e, new Target(e, cfg.isBatching()));
+        }
+        this.timer = timer;
+        this.windowNanos = cfg.getWindow().toNanos();
+        this.maxBatchSize = Math.max(1, cfg.getMaxBatchSize());
+        this.maxAttempts = Math.max(1, cfg.getMaxAttempts());
+        this.retryBackoff = cfg.getRetryBackoff();
+        this.latency = Timer.builder("chatbot.upstream.cancel.latency").register(meterRegistry);
+        this.batchCalls = meterRegistry.counter("chatbot.upstream.cancel.calls", "kind", "batch");
+        this.singleCalls = meterRegistry.counter("chatbot.upstream.cancel.calls", "kind", "single");
+        this.coalesced = meterRegistry.counter("chatbot.upstream.cancel.coalesced");
+        this.retries = meterRegistry.counter("chatbot.upstream.cancel.retries");
+        this.failed = meterRegistry.counter("chatbot.upstream.cancel.failed");
+    }
+
+    /** Ask {@code endpoint} to stop generating {@code requestId}, with the next batch. */
+    void cancel(UpstreamEndpoint endpoint, String requestId) {
+        Target t = targets.get(endpoint);
+        long now = System.nanoTime();
+        if (windowNanos <= 0) {
+            send(t, Map.of(requestId, now));
+            return;
+        }
+        Map<String, Long> full = null;
+        synchronized (t) {
+            if (t.pending.putIfAbsent(requestId, now) != null) {
+                coalesced.increment();
+            } else if (t.pending.size() >= maxBatchSize) {
+                full = t.pending;
+                t.pending = new LinkedHashMap<>();
+            } else if (!t.flushScheduled) {
+                t.flushScheduled = true;
+                timer.schedule(() -> flush(t), windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(t, full);
+        }
+    }
+
+    private void flush(Target t) {
+        Map<String, Long> batch;
+        synchronized (t) {
+            t.flushScheduled = false;
+            if (t.pending.isEmpty()) {
+                return;
+            }
+            batch = t.pending;
+            t.pending = new LinkedHashMap<>();
+        }
+        send(t, batch);
+    }
+
+    /** {@code batch} maps each id to when it was asked for. */
+    private void send(Target t, Map<String, Long> batch) {
+        Mono<Void> call;
+        if (batch.size() > 1 && t.batching) {
+            List<String> ids = new ArrayList<>(batch.keySet());
+            call = retried(post(t, Map.of("request_ids", ids)).doOnSubscribe(s -> batchCalls.increment()))
+                    .doOnSuccess(v -> acked(batch.values()))
+                    .onErrorResume(WebClientResponseException.class, err -> {
+                        if (!err.getStatusCode().is4xxClientError()) {
+                            return Mono.error(err);
+                        }
+                        if (t.batching) {
+                            t.batching = false;
+                            log.info("{} rejected a batched cancel ({}); cancelling one request_id at a time",
+                                    t.endpoint.url(), err.getStatusCode().value());
+                        }
+                        return singles(t, batch);
+                    })
+                    .onErrorResume(err -> {
+                        failed(t, batch.size(), err);
+                        return Mono.empty();
+                    });
+        } else {
+            call = singles(t, batch);
+        }
+        call.subscribe();
+    }
+
+    private Mono<Void> singles(Target t, Map<String, Long> batch) {
+        return Flux.fromIterable(batch.entrySet())
+                .flatMap(e -> retried(post(t, Map.of("request_id", e.getKey()))
+                        .doOnSubscribe(s -> singleCalls.increment()))
+                        // already finished, or never started on this worker
+                        .onErrorResume(WebClientResponseException.class,
+                                err -> err.getStatusCode().value() == HttpStatus.NOT_FOUND.value()
+                                        ? Mono.empty()
+                                        : Mono.error(err))
+                        .doOnSuccess(v -> acked(List.of(e.getValue())))
+                        .onErrorResume(err -> {
+                            failed(t, 1, err);
+                            return Mono.empty();
+                        }), SINGLE_CONCURRENCY)
+                .then();
+    }
+
+    private Mono<Void> post(Target t, Object body) {
+        return t.endpoint.webClient().post().uri("/api/llm/cancel")
+                .contentType(MediaType.APPLICATION_JSON).bodyValue(body)
+                .retrieve().bodyToMono(Void.class);
+    }
+
+    private Mono<Void> retried(Mono<Void> call) {
+        if (maxAttempts <= 1) {
+            return call;
+        }
+        return call.retryWhen(Retry.backoff(maxAttempts - 1, retryBackoff)
+                .filter(UpstreamBalancer::isUpstreamFailure)
+                .doBeforeRetry(s -> retries.increment())
+                .onRetryExhaustedThrow((spec, s) -> s.failure()));
+    }
+
+    private void acked(Iterable<Long> askedAt) {
+        long now = System.nanoTime();
+        for (long at : askedAt) {
+            latency.record(now - at, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void failed(Target t, int ids, Throwable err) {
+        failed.increment(ids);
+        log.warn("Giving up cancelling {} request(s) on {}: {}", ids, t.endpoint.url(), err.toString());
+    }
+
+    /** Cancels waiting to go to one worker. */
+    private static final class Target {
+        final UpstreamEndpoint endpoint;
+        // request id -> System.nanoTime() it was asked for, in order
+        Map<String, Long> pending = new LinkedHashMap<>();
+        boolean flushScheduled;
+        // cleared for good once the worker turns down a batch
+        volatile boolean batching;
+
+        Target(UpstreamEndpoint endpoint, boolean batching) {
+            this.endpoint = endpoint;
+            this.batching = batching;
+        }
+    }
+}
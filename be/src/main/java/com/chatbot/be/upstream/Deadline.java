@@ -0,0 +1,89 @@
+package com.chatbot.be.upstream;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.http.HttpHeaders;
+
+import io.micrometer.core.instrument.Counter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The point in time by which a chat request must be answered, fixed when the
+ * request arrives; see {@link Deadlines}. {@link #bound} enforces it on the
+ * reactive chain: once it passes, the call is cancelled, which frees its
+ * scheduler slot or tells python to stop, and the subscriber gets a
+ * {@link DeadlineExceededException}.
+ */
+public final class Deadline {
+
+    /** No deadline: nothing is bounded and no header is sent. */
+    public static final Deadline NONE = new Deadline(0, null);
+
+    private final long expiresAt;
+    // null for NONE
+    private final Counter exceeded;
+
+    Deadline(long expiresAt, Counter exceeded) {
+        this.expiresAt = expiresAt;
+        this.exceeded = exceeded;
+    }
+
+    public boolean isBounded() {
+        return exceeded != null;
+    }
+
+    /** Time left, never negative; {@link Long#MAX_VALUE} without a deadline. */
+    public long remainingMillis() {
+        if (!isBounded()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+    }
+
+    /** Pass the time left on to the next hop as {@link Deadlines#TIMEOUT_HEADER}. */
+    public void writeTo(HttpHeaders headers) {
+        if (isBounded()) {
+            // a budget of 0 would read as "none" downstream
+            headers.set(Deadlines.TIMEOUT_HEADER, Long.toString(Math.max(1, remainingMillis())));
+        }
+    }
+
+    /** {@code flux}, cancelled and failed with {@link DeadlineExceededException} once the deadline passes. */
+    public <T> Flux<T> bound(Flux<T> flux) {
+        if (!isBounded()) {
+            return flux;
+        }
+        return Flux.defer(() -> {
+            long remaining = expiresAt - System.nanoTime();
+            if (remaining <= 0) {
+                return this.<T>expired().flux();
+            }
+            // one timer for the whole stream, not one per element as Flux.timeout would
+            AtomicBoolean fired = new AtomicBoolean();
+            return flux.takeUntilOther(Mono.delay(Duration.ofNanos(remaining)).doOnNext(t -> fired.set(true)))
+                    .concatWith(Mono.defer(() -> fired.get() ? this.<T>expired() : Mono.<T>empty()));
+        });
+    }
+
+    /** {@code mono}, cancelled and failed with {@link DeadlineExceededException} once the deadline passes. */
+    public <T> Mono<T> bound(Mono<T> mono) {
+        if (!isBounded()) {
+            return mono;
+        }
+        return Mono.defer(() -> {
+            long remaining = expiresAt - System.nanoTime();
+            if (remaining <= 0) {
+                return this.<T>expired();
+            }
+            return mono.timeout(Duration.ofNanos(remaining), Mono.defer(this::<T>expired));
+        });
+    }
+
+    private <T> Mono<T> expired() {
+        exceeded.increment();
+        return Mono.error(new DeadlineExceededException());
+    }
+}
@@ -0,0 +1,12 @@
+package com.chatbot.be.upstream;
+
+/**
+ * A chat request that ran out of its {@link Deadline}; whatever it was waiting
+ * for upstream has been cancelled.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException() {
+        super("deadline exceeded", null, false, false);
+    }
+}
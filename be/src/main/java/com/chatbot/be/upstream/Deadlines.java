@@ -0,0 +1,57 @@
+package com.chatbot.be.upstream;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.chatbot.be.config.UpstreamProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Gives each chat request its {@link Deadline}: the timeout the client asked
+ * for ({@value #TIMEOUT_HEADER} over REST, {@code timeoutMs} on the socket) or
+ * {@code chatbot.upstream.deadline.default-timeout}, capped at
+ * {@code max-timeout}. Python gets the time left in the same header so it can
+ * give up on its own. Expirations are counted as
+ * {@code chatbot.upstream.deadline.exceeded}.
+ */
+@Component
+public class Deadlines {
+
+    /** Milliseconds the request may still take, from the client and to python alike. */
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+    private final long defaultNanos;
+    private final long maxNanos;
+    private final Counter exceeded;
+
+    public Deadlines(UpstreamProperties props, MeterRegistry meterRegistry) {
+        this.defaultNanos = props.getDeadline().getDefaultTimeout().toNanos();
+        this.maxNanos = props.getDeadline().getMaxTimeout().toNanos();
+        this.exceeded = meterRegistry.counter("chatbot.upstream.deadline.exceeded");
+    }
+
+    /** The deadline of a request starting now; {@code timeoutMillis <= 0} takes the default. */
+    public Deadline start(long timeoutMillis) {
+        long nanos = timeoutMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : defaultNanos;
+        if (maxNanos > 0 && (nanos <= 0 || nanos > maxNanos)) {
+            nanos = maxNanos;
+        }
+        return nanos <= 0 ? Deadline.NONE : new Deadline(System.nanoTime() + nanos, exceeded);
+    }
+
+    /** Like {@link #start(long)} for a {@value #TIMEOUT_HEADER} value; a missing or malformed one takes the default. */
+    public Deadline start(String timeoutHeader) {
+        long millis = 0;
+        if (timeoutHeader != null) {
+            try {
+                millis = Long.parseLong(timeoutHeader.trim());
+            } catch (NumberFormatException e) {
+                // the default applies
+            }
+        }
+        return start(millis);
+    }
+}
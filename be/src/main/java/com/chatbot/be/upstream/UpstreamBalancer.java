@@ -0,0 +1,254 @@
+package com.chatbot.be.upstream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.chatbot.be.config.UpstreamProperties;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Routes calls across the configured Python workers. An endpoint is picked by
+ * power-of-two-choices on outstanding requests, scaled by the slow-start
+ * weight of recently recovered endpoints. Endpoints failing
+ * {@code failureThreshold} times in a row are ejected for
+ * {@code ejectionDuration}.
+ * <p>
+ * Each endpoint also has a circuit breaker over a sliding window of failure
+ * and slow-call rates. Open endpoints are skipped; when every endpoint is open
+ * the call fails fast with {@link CallNotPermittedException}. For streams the
+ * slow-call measure is the time to the first chunk. A call its subscriber
+ * cancels before it had an outcome is recorded as a slow call once it has run
+ * past {@code slowCallDurationThreshold}, so an upstream that stalls until
+ * clients give up still trips the breaker; a quicker cancel is not counted.
+ * <p>
+ * Streams are pinned to the endpoint that serves them, keyed by
+ * {@code request_id}, so {@link #cancel(String)} reaches the worker that owns
+ * the generation. Cancels go out in batches through a {@link CancelDispatcher}.
+ */
+@Slf4j
+@Component
+public class UpstreamBalancer {
+
+    private final List<UpstreamEndpoint> endpoints;
+    private final Map<String, UpstreamEndpoint> owners = new ConcurrentHashMap<>();
+    private final int failureThreshold;
+    private final long ejectionNanos;
+    private final long slowStartNanos;
+    private final long slowCallNanos;
+    private final CancelDispatcher cancels;
+
+    public UpstreamBalancer(WebClient.Builder webClientBuilder, UpstreamProperties props,
+            MeterRegistry meterRegistry) {
+        UpstreamProperties.Balancer cfg = props.getBalancer();
+        this.failureThreshold = cfg.getFailureThreshold();
+        this.ejectionNanos = cfg.getEjectionDuration().toNanos();
+        this.slowStartNanos = cfg.getSlowStart().toNanos();
+        this.slowCallNanos = props.getBreaker().getSlowCallDurationThreshold().toNanos();
+
+        CircuitBreakerRegistry breakers = CircuitBreakerRegistry.of(breakerConfig(props.getBreaker()));
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(breakers).bindTo(meterRegistry);
+        this.endpoints = props.resolvedEndpoints().stream()
+                .map(url -> new UpstreamEndpoint(url, webClientBuilder.clone().baseUrl(url).build(),
+                        breakers.circuitBreaker(url)))
+                .toList();
+        for (UpstreamEndpoint e : endpoints) {
+            Gauge.builder("chatbot.upstream.outstanding", e, UpstreamEndpoint::outstanding)
+                    .tag("endpoint", e.url()).register(meterRegistry);
+            Gauge.builder("chatbot.upstream.ejected", e, ep -> ep.isEjected() ? 1 : 0)
+                    .tag("endpoint", e.url()).register(meterRegistry);
+            e.circuitBreaker().getEventPublisher().onStateTransition(event -> {
+                CircuitBreaker.StateTransition t = event.getStateTransition();
+                log.warn("Circuit breaker for {} moved {} -> {}", e.url(), t.getFromState(), t.getToState());
+                Counter.builder("chatbot.upstream.breaker.transitions")
+                        .tag("endpoint", e.url())
+                        .tag("from", t.getFromState().name())
+                        .tag("to", t.getToState().name())
+                        .register(meterRegistry).increment();
+            });
+        }
+        this.cancels = new CancelDispatcher(endpoints, props.getCancel(), Schedulers.parallel(), meterRegistry);
+    }
+
+    private static CircuitBreakerConfig breakerConfig(UpstreamProperties.Breaker cfg) {
+        return CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(cfg.getSlidingWindowSize())
+                .minimumNumberOfCalls(cfg.getMinimumNumberOfCalls())
+                .failureRateThreshold(cfg.getFailureRateThreshold())
+                .slowCallDurationThreshold(cfg.getSlowCallDurationThreshold())
+                .slowCallRateThreshold(cfg.getSlowCallRateThreshold())
+                .waitDurationInOpenState(cfg.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(cfg.getPermittedCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .recordException(UpstreamBalancer::isUpstreamFailure)
+                .build();
+    }
+
+    /** Run a single request/response call on the least loaded endpoint. */
+    public <T> Mono<T> mono(Function<WebClient, Mono<T>> call) {
+        return Mono.defer(() -> {
+            UpstreamEndpoint e = choose();
+            CircuitBreaker cb = e.circuitBreaker();
+            if (!cb.tryAcquirePermission()) {
+                return Mono.error(CallNotPermittedException.createCallNotPermittedException(cb));
+            }
+            long start = System.nanoTime();
+            e.acquire();
+            return call.apply(e.webClient())
+                    .doOnSuccess(v -> {
+                        e.onSuccess();
+                        cb.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    })
+                    .doOnError(err -> recordError(e, start, err, true))
+                    .doOnCancel(() -> abandoned(cb, start))
+                    .doFinally(s -> e.release());
+        });
+    }
+
+    /**
+     * Open a stream on the least loaded endpoint and pin {@code requestId} to
+     * it until the stream terminates.
+     */
+    public <T> Flux<T> stream(String requestId, Function<WebClient, Flux<T>> call) {
+        return Flux.defer(() -> {
+            UpstreamEndpoint e = choose();
+            CircuitBreaker cb = e.circuitBreaker();
+            if (!cb.tryAcquirePermission()) {
+                return Flux.error(CallNotPermittedException.createCallNotPermittedException(cb));
+            }
+            long start = System.nanoTime();
+            // the breaker outcome is decided by the first chunk, an error or a cancel
+            AtomicBoolean recorded = new AtomicBoolean();
+            e.acquire();
+            owners.put(requestId, e);
+            return call.apply(e.webClient())
+                    .doOnNext(v -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            cb.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        e.onSuccess();
+                        if (recorded.compareAndSet(false, true)) {
+                            cb.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doOnError(err -> recordError(e, start, err, recorded.compareAndSet(false, true)))
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            abandoned(cb, start);
+                        }
+                    })
+                    .doFinally(s -> {
+                        owners.remove(requestId, e);
+                        e.release();
+                    });
+        });
+    }
+
+    /**
+     * Ask the worker owning {@code requestId} to stop generating, with the
+     * next batch of cancels for it. If the owner is unknown (already finished
+     * or started elsewhere) every endpoint is notified. The owner is looked
+     * up now, so call this before the stream's own cleanup has run.
+     */
+    public void cancel(String requestId) {
+        UpstreamEndpoint owner = owners.get(requestId);
+        if (owner != null) {
+            cancels.cancel(owner, requestId);
+            return;
+        }
+        for (UpstreamEndpoint e : endpoints) {
+            cancels.cancel(e, requestId);
+        }
+    }
+
+    public List<UpstreamEndpoint> endpoints() {
+        return endpoints;
+    }
+
+    UpstreamEndpoint choose() {
+        int n = endpoints.size();
+        if (n == 1) {
+            return endpoints.get(0);
+        }
+        long now = System.nanoTime();
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        UpstreamEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        // two random picks; a few extra tries to get past ejected or open endpoints
+        for (int tries = 0, picked = 0; tries < 2 * n && picked < 2; tries++) {
+            UpstreamEndpoint e = endpoints.get(rnd.nextInt(n));
+            if (e.isEjected(now) || e.isOpen() || e == best) {
+                continue;
+            }
+            picked++;
+            double score = (e.outstanding() + 1) / e.weight(now, slowStartNanos);
+            if (score < bestScore) {
+                best = e;
+                bestScore = score;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        // nothing healthy found: prefer a closed breaker (ejection fails open),
+        // otherwise return an open one and let its breaker fail the call fast
+        for (UpstreamEndpoint e : endpoints) {
+            if (!e.isOpen()) {
+                return e;
+            }
+        }
+        return endpoints.get(rnd.nextInt(n));
+    }
+
+    /** A call cancelled before its outcome: slow if it already ran past the threshold, otherwise not counted. */
+    private void abandoned(CircuitBreaker cb, long start) {
+        long elapsed = System.nanoTime() - start;
+        if (elapsed >= slowCallNanos) {
+            cb.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+        } else {
+            cb.releasePermission();
+        }
+    }
+
+    private void recordError(UpstreamEndpoint e, long start, Throwable err, boolean toBreaker) {
+        if (toBreaker) {
+            e.circuitBreaker().onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, err);
+        }
+        if (isUpstreamFailure(err)) {
+            e.onFailure(System.nanoTime(), failureThreshold, ejectionNanos);
+        }
+    }
+
+    /** Connection problems and 5xx responses count against the endpoint; 4xx do not. */
+    static boolean isUpstreamFailure(Throwable err) {
+        if (err instanceof WebClientResponseException r) {
+            return r.getStatusCode().is5xxServerError();
+        }
+        return err instanceof WebClientRequestException || err instanceof TimeoutException;
+    }
+}
@@ -0,0 +1,100 @@
+package com.chatbot.be.upstream;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+
+/**
+ * One Python LLM worker together with the load and health state the
+ * {@link UpstreamBalancer} routes on.
+ */
+public class UpstreamEndpoint {
+
+    private final String url;
+    private final WebClient webClient;
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // System.nanoTime() until which the endpoint is ejected; 0 when healthy
+    private volatile long ejectedUntil;
+    // System.nanoTime() at which the endpoint came back; starts slow-start
+    private volatile long recoveredAt;
+
+    UpstreamEndpoint(String url, WebClient webClient, CircuitBreaker circuitBreaker) {
+        this.url = url;
+        this.webClient = webClient;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public String url() {
+        return url;
+    }
+
+    public WebClient webClient() {
+        return webClient;
+    }
+
+    public CircuitBreaker circuitBreaker() {
+        return circuitBreaker;
+    }
+
+    boolean isOpen() {
+        CircuitBreaker.State state = circuitBreaker.getState();
+        return state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    void acquire() {
+        outstanding.incrementAndGet();
+    }
+
+    void release() {
+        outstanding.decrementAndGet();
+    }
+
+    boolean isEjected(long now) {
+        long until = ejectedUntil;
+        if (until == 0) {
+            return false;
+        }
+        if (now - until < 0) {
+            return true;
+        }
+        // ejection expired: let traffic back in gradually
+        ejectedUntil = 0;
+        recoveredAt = now;
+        consecutiveFailures.set(0);
+        return false;
+    }
+
+    /**
+     * Relative capacity in (0, 1]: ramps linearly during slow-start after a
+     * recovery, never below 10% so the endpoint can prove itself.
+     */
+    double weight(long now, long slowStartNanos) {
+        long since = recoveredAt == 0 ? Long.MAX_VALUE : now - recoveredAt;
+        if (slowStartNanos <= 0 || since >= slowStartNanos) {
+            return 1.0;
+        }
+        return Math.max(0.1, (double) since / slowStartNanos);
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    void onFailure(long now, int threshold, long ejectionNanos) {
+        if (consecutiveFailures.incrementAndGet() >= threshold && ejectedUntil == 0) {
+            ejectedUntil = now + ejectionNanos;
+        }
+    }
+
+    public boolean isEjected() {
+        return ejectedUntil != 0;
+    }
+}
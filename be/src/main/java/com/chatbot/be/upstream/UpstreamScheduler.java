@@ -0,0 +1,319 @@
+package com.chatbot.be.upstream;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
+import org.springframework.stereotype.Component;
+
+import com.chatbot.be.config.UpstreamProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * Admission control in front of the Python workers: at most
+ * {@code maxConcurrent} upstream calls run at once, the others wait here.
+ * Waiting calls go by priority class first, then by weighted fair queuing
+ * across users within the class: every call of a user gets a virtual finish
+ * tag {@code 1/weight} after that user's previous one (or after the class's
+ * virtual time, whichever is later) and the smallest tag goes next. A user
+ * with many parallel requests thus gets their share of the workers, not all
+ * of them.
+ * <p>
+ * A call cancelled while waiting is unlinked from its user's queue in O(1);
+ * the user's stale position in the class heap is corrected when it comes up.
+ * The queue wait is published as {@code chatbot.upstream.scheduler.wait},
+ * next to {@code .queued{priority}}, {@code .running} and
+ * {@code .abandoned} (cancelled before starting).
+ */
+@Component
+public class UpstreamScheduler {
+
+    /** Priority classes, highest first. A class only gets workers none of the classes above it is waiting for. */
+    public enum Priority {
+        /** a client is watching tokens arrive */
+        INTERACTIVE,
+        /** a client waits for the whole answer */
+        STANDARD
+    }
+
+    // virtual time one call of a weight-1 user costs
+    private static final long UNIT = 1L << 20;
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    private final boolean enabled;
+    private final int maxConcurrent;
+    private final Map<String, Integer> weights;
+    private final ClassQueue[] classes = new ClassQueue[Priority.values().length];
+    private int running;
+    private final Timer waitTimer;
+    private final Counter abandoned;
+
+    public UpstreamScheduler(UpstreamProperties props, MeterRegistry meterRegistry) {
+        UpstreamProperties.Scheduler cfg = props.getScheduler();
+        this.enabled = cfg.isEnabled();
+        this.maxConcurrent = cfg.getMaxConcurrent();
+        this.weights = Map.copyOf(cfg.getWeights());
+        for (Priority p : Priority.values()) {
+            ClassQueue q = new ClassQueue();
+            classes[p.ordinal()] = q;
+            Gauge.builder("chatbot.upstream.scheduler.queued", this, s -> s.queued(q))
+                    .tag("priority", p.name().toLowerCase()).register(meterRegistry);
+        }
+        Gauge.builder("chatbot.upstream.scheduler.running", this, UpstreamScheduler::running)
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("chatbot.upstream.scheduler.wait").register(meterRegistry);
+        this.abandoned = meterRegistry.counter("chatbot.upstream.scheduler.abandoned");
+    }
+
+    /**
+     * {@code call}, subscribed once admitted. The slot is held until it
+     * terminates or is cancelled. {@code user} is whoever the call is
+     * charged to; null shares one anonymous queue.
+     */
+    public <T> Flux<T> stream(String user, Priority priority, Supplier<? extends Publisher<T>> call) {
+        if (!enabled) {
+            return Flux.defer(call);
+        }
+        return Flux.defer(() -> {
+            Ticket ticket = new Ticket(user == null ? "" : user, priority);
+            // the sink sees a cancel while waiting; once admitted the call itself releases the slot
+            return Mono.<Ticket>create(sink -> submit(ticket, sink))
+                    .flatMapMany(t -> Flux.defer(call).doFinally(signal -> finish(t)));
+        });
+    }
+
+    public <T> Mono<T> mono(String user, Priority priority, Supplier<? extends Mono<T>> call) {
+        return stream(user, priority, call).singleOrEmpty();
+    }
+
+    private void submit(Ticket ticket, MonoSink<Ticket> sink) {
+        List<Ticket> admitted;
+        synchronized (this) {
+            // runs at once if the subscriber is already gone, and the ticket is never queued
+            sink.onCancel(() -> finish(ticket));
+            if (ticket.state == DONE) {
+                return;
+            }
+            ticket.sink = sink;
+            ticket.queuedAt = System.nanoTime();
+            enqueue(ticket);
+            admitted = dispatch();
+        }
+        admit(admitted);
+    }
+
+    private void finish(Ticket ticket) {
+        List<Ticket> admitted;
+        synchronized (this) {
+            switch (ticket.state) {
+                case QUEUED -> {
+                    if (ticket.flow == null) {
+                        // cancelled before it was queued
+                        ticket.state = DONE;
+                        return;
+                    }
+                    if (ticket.next == null) {
+                        // the user's next call is not pushed back by one that never ran
+                        ticket.flow.lastFinish = ticket.start;
+                    }
+                    unlink(ticket);
+                    abandoned.increment();
+                }
+                case RUNNING -> {
+                    running--;
+                    ticket.flow.running--;
+                    removeIfIdle(ticket.flow);
+                }
+                default -> {
+                    return;
+                }
+            }
+            ticket.state = DONE;
+            admitted = dispatch();
+        }
+        admit(admitted);
+    }
+
+    // outside the lock: admitting subscribes to the upstream call
+    private void admit(List<Ticket> admitted) {
+        long now = System.nanoTime();
+        for (Ticket t : admitted) {
+            waitTimer.record(now - t.queuedAt, TimeUnit.NANOSECONDS);
+            t.sink.success(t);
+        }
+    }
+
+    private void enqueue(Ticket ticket) {
+        ClassQueue q = classes[ticket.priority.ordinal()];
+        Flow flow = q.flows.get(ticket.user);
+        if (flow == null) {
+            flow = new Flow(q, ticket.user, UNIT / Math.max(1, weights.getOrDefault(ticket.user, 1)));
+            q.flows.put(ticket.user, flow);
+        }
+        ticket.flow = flow;
+        ticket.start = Math.max(q.virtualTime, flow.lastFinish);
+        ticket.finish = ticket.start + flow.cost;
+        flow.lastFinish = ticket.finish;
+        ticket.prev = flow.tail;
+        if (flow.tail == null) {
+            flow.head = ticket;
+        } else {
+            flow.tail.next = ticket;
+        }
+        flow.tail = ticket;
+        q.queued++;
+        if (!flow.ready) {
+            flow.ready = true;
+            flow.key = flow.head.finish;
+            q.ready.add(flow);
+        }
+    }
+
+    private void unlink(Ticket ticket) {
+        Flow flow = ticket.flow;
+        if (ticket.prev == null) {
+            flow.head = ticket.next;
+        } else {
+            ticket.prev.next = ticket.next;
+        }
+        if (ticket.next == null) {
+            flow.tail = ticket.prev;
+        } else {
+            ticket.next.prev = ticket.prev;
+        }
+        ticket.prev = null;
+        ticket.next = null;
+        flow.owner.queued--;
+    }
+
+    /** Move waiting calls to running while there is room; returns those to admit. */
+    private List<Ticket> dispatch() {
+        List<Ticket> admitted = List.of();
+        while (running < maxConcurrent) {
+            Ticket next = poll();
+            if (next == null) {
+                break;
+            }
+            if (admitted.isEmpty()) {
+                admitted = new ArrayList<>(2);
+            }
+            next.state = RUNNING;
+            running++;
+            admitted.add(next);
+        }
+        return admitted;
+    }
+
+    private Ticket poll() {
+        for (ClassQueue q : classes) {
+            while (q.queued > 0) {
+                Flow flow = q.ready.poll();
+                Ticket head = flow.head;
+                if (head == null) {
+                    // everything it had waiting was cancelled
+                    flow.ready = false;
+                    removeIfIdle(flow);
+                    continue;
+                }
+                if (flow.key != head.finish) {
+                    // its old head was cancelled: queue it again at its real place
+                    flow.key = head.finish;
+                    q.ready.add(flow);
+                    continue;
+                }
+                unlink(head);
+                flow.running++;
+                q.virtualTime = Math.max(q.virtualTime, head.start);
+                if (flow.head != null) {
+                    flow.key = flow.head.finish;
+                    q.ready.add(flow);
+                } else {
+                    flow.ready = false;
+                }
+                return head;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forget a user with nothing waiting or running. Until then their next
+     * call is tagged after their last one, so calls in flight count against
+     * their share.
+     */
+    private void removeIfIdle(Flow flow) {
+        if (!flow.ready && flow.head == null && flow.running == 0) {
+            flow.owner.flows.remove(flow.user, flow);
+        }
+    }
+
+    private synchronized int queued(ClassQueue q) {
+        return q.queued;
+    }
+
+    private synchronized int running() {
+        return running;
+    }
+
+    /** One priority class: per-user queues ordered by the finish tag of their first call. */
+    private static final class ClassQueue {
+        final Map<String, Flow> flows = new HashMap<>();
+        final PriorityQueue<Flow> ready = new PriorityQueue<>(Comparator.comparingLong((Flow f) -> f.key));
+        long virtualTime;
+        int queued;
+    }
+
+    /** The waiting calls of one user in one class, as a doubly linked list. */
+    private static final class Flow {
+        final ClassQueue owner;
+        final String user;
+        final long cost;
+        Ticket head;
+        Ticket tail;
+        long lastFinish;
+        // finish tag of the head when the flow was put in the heap
+        long key;
+        boolean ready;
+        int running;
+
+        Flow(ClassQueue owner, String user, long cost) {
+            this.owner = owner;
+            this.user = user;
+            this.cost = cost;
+        }
+    }
+
+    private static final class Ticket {
+        final String user;
+        final Priority priority;
+        Flow flow;
+        Ticket prev;
+        Ticket next;
+        long start;
+        long finish;
+        long queuedAt;
+        int state = QUEUED;
+        MonoSink<Ticket> sink;
+
+        Ticket(String user, Priority priority) {
+            this.user = user;
+            this.priority = priority;
+        }
+    }
+}
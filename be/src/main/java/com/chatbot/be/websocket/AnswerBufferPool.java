@@ -0,0 +1,45 @@
+package com.chatbot.be.websocket;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small pool of {@link StringBuilder}s used to aggregate streamed answers, so
+ * each stream reuses an already grown buffer instead of allocating a new one.
+ * Oversized buffers are dropped rather than retained.
+ */
+class AnswerBufferPool {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ConcurrentLinkedQueue<StringBuilder> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxPooled;
+    private final int maxRetainedCapacity;
+
+    AnswerBufferPool(int maxPooled, int maxRetainedCapacity) {
+        this.maxPooled = maxPooled;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    StringBuilder acquire() {
+        StringBuilder sb = pool.poll();
+        if (sb == null) {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+        size.decrementAndGet();
+        return sb;
+    }
+
+    void release(StringBuilder sb) {
+        if (sb.capacity() > maxRetainedCapacity) {
+            return;
+        }
+        sb.setLength(0);
+        if (size.incrementAndGet() <= maxPooled) {
+            pool.offer(sb);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+}
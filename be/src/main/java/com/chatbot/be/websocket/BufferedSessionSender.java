@@ -0,0 +1,276 @@
+package com.chatbot.be.websocket;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Outbound side of one WebSocket session, in the spirit of Spring's
+ * {@code ConcurrentWebSocketSessionDecorator}. {@link #send} never blocks:
+ * frames are queued and written one at a time, in order, by a flush task on
+ * {@code executor}, so concurrent streams on one session cannot interleave
+ * writes and a slow client never holds up the Reactor thread that produced
+ * the frame. On a standard (JSR-356) session data frames go out through the
+ * async remote and the next one is written from its completion, so a slow
+ * client does not hold an executor thread either; other sessions are written
+ * with blocking sends. Ping and pong frames skip the queue and go out right
+ * after the frame being written, so the heartbeat of a client that reads
+ * slowly but is alive does not wait behind its backlog.
+ * <p>
+ * A send taking longer than the send-time limit closes the session; a
+ * buffer over its size limit is handled by the configured
+ * {@link OverflowPolicy}. Only frames sent with {@link #sendToken} may be
+ * dropped: a lost {@code started}, closing or error frame would leave the
+ * client waiting for good.
+ */
+@Slf4j
+public class BufferedSessionSender {
+
+    private final WebSocketSession session;
+    // null when the session has no JSR-356 session underneath
+    private final RemoteEndpoint.Async async;
+    private final Executor executor;
+    private final long sendTimeLimitNanos;
+    private final int bufferSizeLimit;
+    private final OverflowPolicy overflowPolicy;
+    // null unless permessage-deflate was negotiated and is being sampled
+    private final DeflateSampler deflate;
+
+    // guarded by itself; held only to move frames in or out, never while sending
+    private final ArrayDeque<Queued> buffer = new ArrayDeque<>();
+    private int bufferSize;
+    // ping and pong frames, sent before anything in buffer; guarded by buffer
+    private final ArrayDeque<WebSocketMessage<?>> control = new ArrayDeque<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile long sendStartTime;
+    private volatile boolean closed;
+
+    public BufferedSessionSender(WebSocketSession session, Executor executor, WebSocketProperties.Outbound cfg) {
+        this(session, executor, cfg, null);
+    }
+
+    BufferedSessionSender(WebSocketSession session, Executor executor, WebSocketProperties.Outbound cfg,
+            DeflateSampler deflate) {
+        this.session = session;
+        this.deflate = deflate;
+        this.executor = executor;
+        this.sendTimeLimitNanos = cfg.getSendTimeLimit().toNanos();
+        this.bufferSizeLimit = (int) cfg.getBufferSizeLimit().toBytes();
+        this.overflowPolicy = cfg.getOverflowPolicy();
+        this.async = asyncRemote(session);
+        if (async != null) {
+            async.setSendTimeout(cfg.getSendTimeLimit().toMillis());
+        }
+    }
+
+    private static RemoteEndpoint.Async asyncRemote(WebSocketSession session) {
+        if (WebSocketSessionDecorator.unwrap(session) instanceof NativeWebSocketSession n) {
+            Session nativeSession = n.getNativeSession(Session.class);
+            return nativeSession == null ? null : nativeSession.getAsyncRemote();
+        }
+        return null;
+    }
+
+    public WebSocketSession session() {
+        return session;
+    }
+
+    public void send(String text) {
+        send(new TextMessage(text));
+    }
+
+    public void send(WebSocketMessage<?> message) {
+        send(message, false);
+    }
+
+    /** Send a frame of stream tokens, which the {@link OverflowPolicy#DROP} policy may discard. */
+    public void sendToken(WebSocketMessage<?> message) {
+        send(message, true);
+    }
+
+    private void send(WebSocketMessage<?> message, boolean droppable) {
+        if (closed) {
+            return;
+        }
+        boolean overLimit;
+        synchronized (buffer) {
+            if (message instanceof PingMessage || message instanceof PongMessage) {
+                control.add(message);
+            } else {
+                buffer.add(new Queued(message, droppable));
+                bufferSize += message.getPayloadLength();
+            }
+            overLimit = checkLimits();
+        }
+        if (overLimit) {
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+            return;
+        }
+        if (!closed && flushScheduled.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    public int bufferSize() {
+        synchronized (buffer) {
+            return bufferSize;
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void flush() {
+        do {
+            WebSocketMessage<?> message;
+            while (!closed && (message = poll()) != null) {
+                if (async != null && (message instanceof TextMessage || message instanceof BinaryMessage)) {
+                    // the flush goes on from the completion; flushScheduled stays set until then
+                    sendAsync(message);
+                    return;
+                }
+                sendStartTime = System.nanoTime();
+                try {
+                    session.sendMessage(message);
+                    sent(message);
+                } catch (IOException | RuntimeException e) {
+                    failed(e);
+                } finally {
+                    sendStartTime = 0;
+                }
+            }
+            flushScheduled.set(false);
+            // a frame may have been queued after the last poll but before the flag was cleared
+        } while (!closed && hasPending() && flushScheduled.compareAndSet(false, true));
+    }
+
+    private void sendAsync(WebSocketMessage<?> message) {
+        sendStartTime = System.nanoTime();
+        SendHandler done = result -> {
+            sendStartTime = 0;
+            if (!result.isOK()) {
+                failed(result.getException());
+                return;
+            }
+            sent(message);
+            // not inline: a send may complete on the calling thread, and frames would recurse
+            executor.execute(this::flush);
+        };
+        try {
+            if (message instanceof TextMessage text) {
+                async.sendText(text.getPayload(), done);
+            } else {
+                async.sendBinary(((BinaryMessage) message).getPayload().duplicate(), done);
+            }
+        } catch (RuntimeException e) {
+            sendStartTime = 0;
+            failed(e);
+        }
+    }
+
+    private void sent(WebSocketMessage<?> message) {
+        if (deflate != null) {
+            deflate.sample(message);
+        }
+    }
+
+    private void failed(Throwable err) {
+        log.debug("Send to session {} failed, closing", session.getId(), err);
+        close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private boolean hasPending() {
+        synchronized (buffer) {
+            return !buffer.isEmpty() || !control.isEmpty();
+        }
+    }
+
+    private WebSocketMessage<?> poll() {
+        synchronized (buffer) {
+            if (!control.isEmpty()) {
+                return control.poll();
+            }
+            Queued queued = buffer.poll();
+            if (queued == null) {
+                return null;
+            }
+            bufferSize -= queued.message().getPayloadLength();
+            return queued.message();
+        }
+    }
+
+    /** Called with the buffer lock held; returns true if the session must be closed. */
+    private boolean checkLimits() {
+        long started = sendStartTime;
+        if (started != 0 && System.nanoTime() - started > sendTimeLimitNanos) {
+            log.debug("Send to session {} exceeded the time limit, closing", session.getId());
+            return true;
+        }
+        if (bufferSize <= bufferSizeLimit) {
+            return false;
+        }
+        switch (overflowPolicy) {
+            case DROP -> dropOldest();
+            case CLOSE -> log.debug("Send buffer of session {} overflowed, closing", session.getId());
+        }
+        return bufferSize > bufferSizeLimit;
+    }
+
+    private void dropOldest() {
+        int dropped = 0;
+        Iterator<Queued> it = buffer.iterator();
+        while (bufferSize > bufferSizeLimit && it.hasNext()) {
+            Queued queued = it.next();
+            if (queued.droppable()) {
+                it.remove();
+                bufferSize -= queued.message().getPayloadLength();
+                dropped++;
+            }
+        }
+        log.debug("Dropped {} frames for slow session {}", dropped, session.getId());
+    }
+
+    public void close(CloseStatus status) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (buffer) {
+            buffer.clear();
+            control.clear();
+            bufferSize = 0;
+        }
+        if (deflate != null) {
+            deflate.finish();
+        }
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    /** A buffered frame; only token frames are {@code droppable}. */
+    private record Queued(WebSocketMessage<?> message, boolean droppable) {
+    }
+}
@@ -0,0 +1,134 @@
+package com.chatbot.be.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * {@code chat.v1.cbor} frames for one stream; see {@link ChatProtocol} for
+ * the layout. Only the token text of upstream events is sent; an upstream
+ * error event becomes an error frame after the tokens that preceded it, and
+ * other events (done/cancelled markers) are dropped, since the handler sends
+ * its own.
+ */
+class CborStreamEncoder implements StreamEncoder {
+
+    static final int START = 0;
+    static final int CANCEL = 1;
+    static final int TOKENS = 2;
+    static final int DONE = 3;
+    static final int CANCELLED = 4;
+    static final int ERROR = 5;
+    static final int RESUME = 6;
+    static final int DEADLINE_EXCEEDED = 7;
+    static final int STARTED = 8;
+
+    static final CBORFactory CBOR = new CBORFactory();
+
+    private final long streamId;
+
+    CborStreamEncoder(long streamId) {
+        this.streamId = streamId;
+    }
+
+    @Override
+    public List<WebSocketMessage<?>> tokens(long firstSeq, List<String> events) {
+        // an upstream error event ends the useful part of the batch: the tokens
+        // before it go out first, then the error; nothing after it is sent
+        SseEvents.Parsed[] parsed = new SseEvents.Parsed[events.size()];
+        String error = null;
+        int count = 0;
+        while (count < parsed.length && error == null) {
+            parsed[count] = SseEvents.parse(events.get(count));
+            error = parsed[count++].error();
+        }
+        int before = error != null ? count - 1 : count;
+        if (before == 0) {
+            return List.of(error(error));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + before * 16);
+        try (JsonGenerator g = CBOR.createGenerator(bytes)) {
+            g.writeStartArray();
+            g.writeNumber(TOKENS);
+            g.writeNumber(streamId);
+            // the client resumes after the last event it saw, chunk or not
+            g.writeNumber(firstSeq + before - 1);
+            for (int i = 0; i < before; i++) {
+                if (parsed[i].chunk() != null) {
+                    g.writeString(parsed[i].chunk());
+                }
+            }
+            g.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        BinaryMessage tokens = new BinaryMessage(bytes.toByteArray());
+        return error != null ? List.of(tokens, error(error)) : List.of(tokens);
+    }
+
+    @Override
+    public WebSocketMessage<?> started(String resumeToken) {
+        return frame(STARTED, resumeToken);
+    }
+
+    @Override
+    public WebSocketMessage<?> done() {
+        return frame(DONE, null);
+    }
+
+    @Override
+    public WebSocketMessage<?> cancelled() {
+        return frame(CANCELLED, null);
+    }
+
+    @Override
+    public WebSocketMessage<?> error(String code) {
+        return frame(ERROR, code);
+    }
+
+    @Override
+    public WebSocketMessage<?> rateLimited(long retryAfterMillis) {
+        return frame(ERROR, "rate_limited", retryAfterMillis);
+    }
+
+    @Override
+    public WebSocketMessage<?> deadlineExceeded() {
+        return frame(DEADLINE_EXCEEDED, null);
+    }
+
+    @Override
+    public WebSocketMessage<?> failure(String message) {
+        return frame(ERROR, String.valueOf(message));
+    }
+
+    private BinaryMessage frame(int type, String text) {
+        return frame(type, text, -1);
+    }
+
+    /** {@code number} is written after {@code text} unless negative. */
+    private BinaryMessage frame(int type, String text, long number) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + (text == null ? 0 : text.length()));
+        try (JsonGenerator g = CBOR.createGenerator(bytes)) {
+            g.writeStartArray();
+            g.writeNumber(type);
+            g.writeNumber(streamId);
+            if (text != null) {
+                g.writeString(text);
+            }
+            if (number >= 0) {
+                g.writeNumber(number);
+            }
+            g.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new BinaryMessage(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,35 @@
+package com.chatbot.be.websocket;
+
+/**
+ * A decoded inbound frame on {@code /ws/chat}: start a stream for
+ * {@code message}, cancel the stream {@code requestId}, or resume it after
+ * {@code lastSeq} on a new connection, presenting the {@code resumeToken}
+ * the stream was started with. {@code requestId} may be null on a
+ * start, in which case the handler generates one. {@code streamId} is the
+ * client's numeric id under {@link ChatProtocol#CBOR} and
+ * {@link #NO_STREAM_ID} for JSON frames. {@code timeoutMillis} is the
+ * client's time budget for a start, 0 when it named none.
+ */
+record ChatCommand(Type type, String requestId, String message, long conversationId, long streamId, long lastSeq,
+        long timeoutMillis, String resumeToken) {
+
+    enum Type {
+        START, CANCEL, RESUME
+    }
+
+    static final long DEFAULT_CONVERSATION_ID = 1L;
+    static final long NO_STREAM_ID = -1L;
+
+    ChatCommand(Type type, String requestId, String message, long conversationId) {
+        this(type, requestId, message, conversationId, NO_STREAM_ID, 0);
+    }
+
+    ChatCommand(Type type, String requestId, String message, long conversationId, long streamId, long lastSeq) {
+        this(type, requestId, message, conversationId, streamId, lastSeq, 0, null);
+    }
+
+    ChatCommand withRequestId(String requestId) {
+        return new ChatCommand(type, requestId, message, conversationId, streamId, lastSeq, timeoutMillis,
+                resumeToken);
+    }
+}
@@ -0,0 +1,186 @@
+package com.chatbot.be.websocket;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Decodes inbound chat frames with a streaming {@link JsonParser} straight
+ * into a {@link ChatCommand}, without building an intermediate {@code Map}.
+ * Recognized fields are {@code requestId}, {@code cancel}, {@code resume},
+ * {@code lastSeq}, {@code resumeToken}, {@code message},
+ * {@code conversationId} and {@code timeoutMs}; anything else is skipped.
+ * Frames, ids and messages over the configured sizes are rejected.
+ * <p>
+ * Binary frames of the {@link ChatProtocol#CBOR} subprotocol are arrays
+ * {@code [type, streamId, ...]} and decode to commands carrying a
+ * {@code streamId}; unless the client named a requestId the handler derives
+ * one.
+ */
+class ChatCommandDecoder {
+
+    static final int MAX_REQUEST_ID_LENGTH = 128;
+    static final int MAX_RESUME_TOKEN_LENGTH = 64;
+
+    private final JsonFactory json;
+    private final CBORFactory cbor;
+    private final int maxFrameChars;
+    private final int maxMessageChars;
+
+    ChatCommandDecoder(int maxFrameChars, int maxMessageChars) {
+        this.maxFrameChars = maxFrameChars;
+        this.maxMessageChars = maxMessageChars;
+        // one factory, shared by every session; it is thread-safe once configured
+        StreamReadConstraints limits = StreamReadConstraints.builder()
+                .maxNestingDepth(8)
+                .maxStringLength(maxFrameChars)
+                .maxNumberLength(32)
+                .build();
+        this.json = JsonFactory.builder().streamReadConstraints(limits).build();
+        this.cbor = CBORFactory.builder().streamReadConstraints(limits).build();
+    }
+
+    ChatCommand decode(String payload) {
+        if (payload.length() > maxFrameChars) {
+            throw new IllegalArgumentException("frame too large");
+        }
+        String requestId = null;
+        String message = null;
+        String resumeToken = null;
+        boolean cancel = false;
+        boolean resume = false;
+        long lastSeq = 0;
+        long timeoutMillis = 0;
+        long conversationId = ChatCommand.DEFAULT_CONVERSATION_ID;
+        try (JsonParser p = json.createParser(payload)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("frame is not a JSON object");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "requestId" -> requestId = value == JsonToken.VALUE_NULL ? null
+                            : text(p, value, "requestId", MAX_REQUEST_ID_LENGTH);
+                    case "message" -> message = text(p, value, "message", maxMessageChars);
+                    case "cancel" -> cancel = value == JsonToken.VALUE_TRUE;
+                    case "resume" -> resume = value == JsonToken.VALUE_TRUE;
+                    case "resumeToken" -> resumeToken = text(p, value, "resumeToken", MAX_RESUME_TOKEN_LENGTH);
+                    case "lastSeq" -> {
+                        if (value == JsonToken.VALUE_NUMBER_INT) {
+                            lastSeq = p.getLongValue();
+                        }
+                    }
+                    case "conversationId" -> {
+                        if (value == JsonToken.VALUE_NUMBER_INT) {
+                            conversationId = p.getLongValue();
+                        }
+                    }
+                    case "timeoutMs" -> {
+                        if (value == JsonToken.VALUE_NUMBER_INT) {
+                            timeoutMillis = Math.max(p.getLongValue(), 0);
+                        }
+                    }
+                    default -> p.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed JSON", e);
+        }
+        if (cancel) {
+            if (requestId == null) {
+                throw new IllegalArgumentException("cancel without requestId");
+            }
+            return new ChatCommand(ChatCommand.Type.CANCEL, requestId, null, conversationId);
+        }
+        if (resume) {
+            if (requestId == null || resumeToken == null || lastSeq < 0) {
+                throw new IllegalArgumentException("resume needs requestId, resumeToken and lastSeq");
+            }
+            return new ChatCommand(ChatCommand.Type.RESUME, requestId, null, conversationId,
+                    ChatCommand.NO_STREAM_ID, lastSeq, 0, resumeToken);
+        }
+        if (message == null || message.isBlank()) {
+            throw new IllegalArgumentException("empty message");
+        }
+        return new ChatCommand(ChatCommand.Type.START, requestId == null || requestId.isEmpty() ? null : requestId,
+                message, conversationId, ChatCommand.NO_STREAM_ID, 0, timeoutMillis, null);
+    }
+
+    ChatCommand decode(byte[] payload) {
+        if (payload.length > maxFrameChars) {
+            throw new IllegalArgumentException("frame too large");
+        }
+        try (JsonParser p = cbor.createParser(payload)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("frame is not a CBOR array");
+            }
+            int type = (int) number(p, "type");
+            long streamId = number(p, "streamId");
+            if (streamId < 0) {
+                throw new IllegalArgumentException("negative streamId");
+            }
+            if (type == CborStreamEncoder.CANCEL) {
+                return new ChatCommand(ChatCommand.Type.CANCEL, null, null,
+                        ChatCommand.DEFAULT_CONVERSATION_ID, streamId, 0);
+            }
+            if (type == CborStreamEncoder.RESUME) {
+                String requestId = text(p, p.nextToken(), "requestId", MAX_REQUEST_ID_LENGTH);
+                long lastSeq = number(p, "lastSeq");
+                String resumeToken = text(p, p.nextToken(), "resumeToken", MAX_RESUME_TOKEN_LENGTH);
+                return new ChatCommand(ChatCommand.Type.RESUME, requestId, null,
+                        ChatCommand.DEFAULT_CONVERSATION_ID, streamId, Math.max(lastSeq, 0), 0, resumeToken);
+            }
+            if (type != CborStreamEncoder.START) {
+                throw new IllegalArgumentException("unknown frame type " + type);
+            }
+            String message = text(p, p.nextToken(), "message", maxMessageChars);
+            if (message.isBlank()) {
+                throw new IllegalArgumentException("empty message");
+            }
+            long conversationId = ChatCommand.DEFAULT_CONVERSATION_ID;
+            String requestId = null;
+            JsonToken next = p.nextToken();
+            if (next == JsonToken.VALUE_NUMBER_INT) {
+                conversationId = p.getLongValue();
+                next = p.nextToken();
+            }
+            // an optional requestId makes the stream resumable from another connection,
+            // together with the token of its started frame (null when only a timeout follows)
+            long timeoutMillis = 0;
+            if (next == JsonToken.VALUE_STRING || next == JsonToken.VALUE_NULL) {
+                if (next == JsonToken.VALUE_STRING) {
+                    requestId = text(p, next, "requestId", MAX_REQUEST_ID_LENGTH);
+                }
+                if (p.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+                    timeoutMillis = Math.max(p.getLongValue(), 0);
+                }
+            }
+            return new ChatCommand(ChatCommand.Type.START, requestId, message, conversationId, streamId, 0,
+                    timeoutMillis, null);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed CBOR", e);
+        }
+    }
+
+    private static long number(JsonParser p, String field) throws IOException {
+        if (p.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+            throw new IllegalArgumentException(field + " must be an integer");
+        }
+        return p.getLongValue();
+    }
+
+    private static String text(JsonParser p, JsonToken value, String field, int maxLength) throws IOException {
+        if (value != JsonToken.VALUE_STRING) {
+            throw new IllegalArgumentException(field + " must be a string");
+        }
+        if (p.getTextLength() > maxLength) {
+            throw new IllegalArgumentException(field + " too long");
+        }
+        return p.getText();
+    }
+}
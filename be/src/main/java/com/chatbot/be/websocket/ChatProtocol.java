@@ -0,0 +1,75 @@
+package com.chatbot.be.websocket;
+
+import java.util.List;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * WebSocket subprotocols spoken on {@code /ws/chat}. JSON text frames are the
+ * default when the client asks for no subprotocol; each token frame is then
+ * one upstream event, a single JSON object.
+ * <p>
+ * {@code chat.v1.json-batch} is the same, except that consecutive token
+ * events may be merged (see {@link TokenCoalescer}): every token frame is a
+ * JSON array of one or more events. Control frames stay single objects.
+ * <p>
+ * {@code chat.v1.cbor} carries the same messages as CBOR arrays in binary
+ * frames, with a numeric stream id chosen by the client in place of the
+ * (here optional) string requestId:
+ * <pre>
+ * client -> server   [0, streamId, message(, conversationId)(, requestId(, timeoutMs))]   start
+ *                    [1, streamId]                                                         cancel
+ *                    [6, streamId, requestId, lastSeq, resumeToken]                        resume
+ * server -> client   [8, streamId, resumeToken]                                            started
+ *                    [2, streamId, lastSeq, text, text, ...]                               one or more tokens
+ *                    [3, streamId]                                                         done
+ *                    [4, streamId]                                                         cancelled
+ *                    [5, streamId, code(, retryAfterMs)]                                   error
+ *                    [7, streamId]                                                         deadline exceeded
+ * </pre>
+ * {@code lastSeq} numbers the upstream events of a stream; a client that lost
+ * its connection resumes from the last one it received, which needs the
+ * requestId it named on start and the {@code resumeToken} of the started
+ * frame (sent first, in JSON as {@code "status": "started"}, while resumption
+ * is enabled). A cancel for a stream that is not running is ignored: its last
+ * frame has already been sent. {@code retryAfterMs} comes with the
+ * {@code rate_limited} code. {@code requestId} may be null when only
+ * {@code timeoutMs} is given; a stream still running after its timeout (or
+ * the server's default) is stopped with a deadline-exceeded frame.
+ */
+enum ChatProtocol {
+    JSON("chat.v1.json"),
+    JSON_BATCH("chat.v1.json-batch"),
+    CBOR("chat.v1.cbor");
+
+    static final List<String> NAMES = List.of(JSON.id, JSON_BATCH.id, CBOR.id);
+
+    private final String id;
+
+    ChatProtocol(String id) {
+        this.id = id;
+    }
+
+    static ChatProtocol of(WebSocketSession session) {
+        return of(session.getAcceptedProtocol());
+    }
+
+    static ChatProtocol of(String acceptedProtocol) {
+        for (ChatProtocol p : values()) {
+            if (p.id.equals(acceptedProtocol)) {
+                return p;
+            }
+        }
+        return JSON;
+    }
+
+    /** Whether several token events may share one frame. */
+    boolean coalesces() {
+        return this != JSON;
+    }
+
+    /** Encoder for one stream; {@code streamId} is only used by CBOR. */
+    StreamEncoder encoder(String requestId, long streamId) {
+        return this == CBOR ? new CborStreamEncoder(streamId) : new JsonStreamEncoder(requestId, this == JSON_BATCH);
+    }
+}
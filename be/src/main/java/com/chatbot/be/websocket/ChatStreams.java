@@ -0,0 +1,108 @@
+package com.chatbot.be.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import com.chatbot.be.model.Message;
+import com.chatbot.be.service.MessageWriteBehind;
+import com.chatbot.be.upstream.Deadline;
+import com.chatbot.be.upstream.UpstreamBalancer;
+import com.chatbot.be.upstream.UpstreamScheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+/**
+ * What both chat socket handlers need from the rest of the backend: the
+ * upstream SSE stream for one question and storage of the streamed answer.
+ */
+@Slf4j
+@Component
+public class ChatStreams {
+
+    // same as the codecs' default in-memory limit the SSE reader used to apply
+    private static final int MAX_EVENT_BYTES = 256 * 1024;
+
+    private final UpstreamBalancer upstream;
+    private final UpstreamScheduler scheduler;
+    private final MessageWriteBehind messageWriteBehind;
+    private final AnswerBufferPool answerBuffers = new AnswerBufferPool(256, 64 * 1024);
+
+    public ChatStreams(UpstreamBalancer upstream, UpstreamScheduler scheduler,
+            MessageWriteBehind messageWriteBehind) {
+        this.upstream = upstream;
+        this.scheduler = scheduler;
+        this.messageWriteBehind = messageWriteBehind;
+    }
+
+    /**
+     * Raw SSE events for {@code userMessage}, started once the
+     * {@link UpstreamScheduler} admits it on behalf of {@code user}.
+     * Cancelling the subscription tells python to stop generating. Python is
+     * told the time left until {@code deadline}; enforcing it is up to the
+     * subscriber ({@link Deadline#bound}), since a shared stream has several.
+     */
+    Flux<String> open(String userMessage, String upstreamRequestId, String user, Deadline deadline) {
+        // decoded once per event; frames and the resume buffer on /ws/chat hold Strings
+        return openEvents(userMessage, upstreamRequestId, user, deadline).map(event -> {
+            try {
+                return event.toString(StandardCharsets.UTF_8);
+            } finally {
+                DataBufferUtils.release(event);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #open}, but each event's data as undecoded upstream bytes
+     * (see {@link SseFramer}); the subscriber releases them.
+     */
+    Flux<DataBuffer> openEvents(String userMessage, String upstreamRequestId, String user, Deadline deadline) {
+        // pinned to one worker so a later cancel reaches the node generating it;
+        // a request cancelled while still queued never reached python
+        return scheduler.stream(user, UpstreamScheduler.Priority.INTERACTIVE, () -> upstream
+                .stream(upstreamRequestId, webClient -> SseFramer.frame(webClient.post()
+                        .uri("/api/llm/stream")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        // what is left of it once admitted
+                        .headers(deadline::writeTo)
+                        .bodyValue(Map.of("message", userMessage, "request_id", upstreamRequestId))
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class), MAX_EVENT_BYTES))
+                .doOnCancel(() -> cancelUpstream(upstreamRequestId)));
+    }
+
+    private void cancelUpstream(String upstreamRequestId) {
+        // notify python to cancel; batched with other cancels for the same worker
+        upstream.cancel(upstreamRequestId);
+    }
+
+    StreamTranscript transcript(String userMessage, long conversationId) {
+        return new StreamTranscript(answerBuffers, userMessage, conversationId);
+    }
+
+    /**
+     * Store the answer once its stream ended. It is partial unless the stream
+     * completed without python reporting it cut short; an empty answer is not
+     * stored.
+     */
+    void persist(StreamTranscript transcript, SignalType signal) {
+        boolean partial = signal != SignalType.ON_COMPLETE || transcript.isCut();
+        if (transcript.isEmpty()) {
+            transcript.finish(partial);
+            return;
+        }
+        Message m = transcript.finish(partial);
+        if (m != null) {
+            messageWriteBehind.enqueue(m).subscribe(null,
+                    err -> log.error("Failed to queue streamed answer for persistence", err));
+        }
+    }
+}
@@ -1,109 +1,333 @@
 package com.chatbot.be.websocket;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
-import org.springframework.web.reactive.function.client.WebClient;
+
+import com.chatbot.be.config.WebSocketProperties;
+import com.chatbot.be.ratelimit.ChatRateLimiter;
+import com.chatbot.be.service.SingleFlight;
+import com.chatbot.be.upstream.Deadline;
+import com.chatbot.be.upstream.Deadlines;
 
 import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Servlet-based WebSocket handler (TextWebSocketHandler) that proxies chat
  * requests to the Python
  * LLM service (SSE) and streams tokens back to the client. Supports
- * cancellation by requestId.
+ * cancellation by requestId, and resuming a stream from another connection
+ * after a drop ({@code {"resume": true, "requestId", "lastSeq", "resumeToken"}}
+ * with the token of the stream's started frame, see {@link ResumableStreams}).
+ * Each stream's answer is aggregated and stored once the stream ends
+ * (cancelled streams are stored as partial answers).
+ * Identical questions streaming at the same time share one upstream call.
+ * All outbound frames go through the session's {@link BufferedSessionSender};
+ * token frames are first merged per time/size window by a {@link TokenCoalescer}.
+ * Clients may negotiate the binary {@code chat.v1.cbor} subprotocol instead of
+ * the default JSON text frames; see {@link ChatProtocol}. Dead and idle
+ * sessions are pinged and reaped by the {@link SessionReaper}. A stream still
+ * running at its {@link Deadline} is cut off with a deadline-exceeded frame.
  */
 @Component
-public class ChatWebSocketHandler extends TextWebSocketHandler {
+public class ChatWebSocketHandler extends TextWebSocketHandler implements SubProtocolCapable {
+
+    private static final String SENDER_ATTRIBUTE = BufferedSessionSender.class.getName();
+    private static final String HEARTBEAT_ATTRIBUTE = SessionReaper.Session.class.getName();
+    private static final String CLIENT_ATTRIBUTE = ChatRateLimiter.Client.class.getName();
+    private static final String CBOR_STREAMS_ATTRIBUTE = ChatWebSocketHandler.class.getName() + ".cborStreams";
 
-    private final WebClient webClient;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final ChatStreams chatStreams;
+    private final ChatCommandDecoder decoder;
+    private final SingleFlight<String> inFlightStreams = new SingleFlight<>();
+    private final WebSocketProperties webSocketProperties;
+    // session writes start here, never on the Reactor thread that produced the frame
+    private final Executor sendExecutor;
 
-    // track active streaming subscriptions by requestId so they can be cancelled
-    private final Map<String, Disposable> activeStreams = new ConcurrentHashMap<>();
+    // active streaming subscriptions per session, so they can be cancelled and reaped
+    private final StreamRegistry streams;
+    private final ResumableStreams resumable;
+    private final DeflateMetrics deflateMetrics;
+    private final SessionReaper reaper;
+    private final ChatRateLimiter rateLimiter;
+    private final Deadlines deadlines;
+    private final int maxFrameChars;
+
+    public ChatWebSocketHandler(ChatStreams chatStreams, WebSocketProperties webSocketProperties,
+            StreamRegistry streams, ResumableStreams resumable, DeflateMetrics deflateMetrics,
+            SessionReaper reaper, ChatRateLimiter rateLimiter, Deadlines deadlines, Scheduler blockingScheduler) {
+        this.chatStreams = chatStreams;
+        this.deadlines = deadlines;
+        this.reaper = reaper;
+        this.rateLimiter = rateLimiter;
+        this.resumable = resumable;
+        this.maxFrameChars = (int) webSocketProperties.getCoalescing().getMaxFrameSize().toBytes();
+        this.sendExecutor = task -> blockingScheduler.schedule(task);
+        this.streams = streams;
+        this.deflateMetrics = deflateMetrics;
+        this.webSocketProperties = webSocketProperties;
+        WebSocketProperties.Inbound inbound = webSocketProperties.getInbound();
+        this.decoder = new ChatCommandDecoder((int) inbound.getMaxFrameSize().toBytes(),
+                inbound.getMaxMessageLength());
+    }
 
-    public ChatWebSocketHandler(WebClient.Builder builder) {
-        this.webClient = builder.baseUrl("http://localhost:8000").build();
+    private static BufferedSessionSender sender(WebSocketSession session) {
+        return (BufferedSessionSender) session.getAttributes().get(SENDER_ATTRIBUTE);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        BufferedSessionSender out = new BufferedSessionSender(session, sendExecutor,
+                webSocketProperties.getOutbound(), deflateMetrics.forSession(session));
+        session.getAttributes().put(SENDER_ATTRIBUTE, out);
+        session.getAttributes().put(HEARTBEAT_ATTRIBUTE, reaper.track(out, status -> release(session, status)));
+        session.getAttributes().put(CLIENT_ATTRIBUTE,
+                rateLimiter.client(session.getPrincipal(), session.getRemoteAddress()));
+        session.getAttributes().put(CBOR_STREAMS_ATTRIBUTE, new ConcurrentHashMap<Long, Attachment>());
+    }
+
+    private static SessionReaper.Session heartbeat(WebSocketSession session) {
+        return (SessionReaper.Session) session.getAttributes().get(HEARTBEAT_ATTRIBUTE);
+    }
+
+    private static ChatRateLimiter.Client client(WebSocketSession session) {
+        return (ChatRateLimiter.Client) session.getAttributes().get(CLIENT_ATTRIBUTE);
+    }
+
+    /** The session's running streams by CBOR stream id. */
+    @SuppressWarnings("unchecked")
+    private static Map<Long, Attachment> cborStreams(WebSocketSession session) {
+        return (Map<Long, Attachment>) session.getAttributes().get(CBOR_STREAMS_ATTRIBUTE);
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return ChatProtocol.NAMES;
     }
 
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
-        String payload = message.getPayload();
+        heartbeat(session).frame();
+        BufferedSessionSender out = sender(session);
+        ChatCommand command;
         try {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> map = mapper.readValue(payload, Map.class);
-            String requestId = (String) map.get("requestId");
-            Boolean cancel = (Boolean) map.getOrDefault("cancel", false);
-
-            if (cancel != null && cancel && requestId != null) {
-                // notify python to cancel
-                webClient.post().uri(uriBuilder -> uriBuilder.path("/api/llm/cancel").build())
-                        .contentType(MediaType.APPLICATION_JSON).bodyValue(Map.of("request_id", requestId))
-                        .retrieve().bodyToMono(Void.class).subscribe();
-
-                Disposable d = activeStreams.remove(requestId);
-                if (d != null && !d.isDisposed()) {
-                    d.dispose();
-                }
+            command = decoder.decode(message.getPayload());
+        } catch (IllegalArgumentException e) {
+            out.send(ControlFrames.INVALID_PAYLOAD);
+            return;
+        }
+        handleCommand(session, out, command);
+    }
 
-                session.sendMessage(
-                        new TextMessage("{\"requestId\": \"" + requestId + "\", \"status\": \"cancelled\"}"));
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        heartbeat(session).frame();
+        BufferedSessionSender out = sender(session);
+        ChatCommand command;
+        try {
+            command = decoder.decode(toBytes(message));
+        } catch (IllegalArgumentException e) {
+            out.send(new CborStreamEncoder(ChatCommand.NO_STREAM_ID).error("invalid-payload"));
+            return;
+        }
+        if (command.type() == ChatCommand.Type.CANCEL) {
+            // a cancel names the stream id only; the stream may run under the client's requestId
+            Attachment attachment = cborStreams(session).get(command.streamId());
+            if (attachment == null) {
+                // not running (any more): its last frame has been sent
                 return;
             }
+            command = command.withRequestId(attachment.requestId);
+        } else if (command.requestId() == null) {
+            // stream ids are only unique per connection
+            command = command.withRequestId("cbor-" + session.getId() + "-" + command.streamId());
+        }
+        handleCommand(session, out, command);
+    }
 
-            String userMessage = (String) map.get("message");
-            final String finalRequestId = (requestId == null || requestId.isEmpty())
-                    ? java.util.UUID.randomUUID().toString()
-                    : requestId;
-
-            // subscribe to Python SSE stream and forward each chunk to websocket session
-            Disposable disp = webClient.post()
-                    .uri("/api/llm/stream")
-                    .accept(MediaType.TEXT_EVENT_STREAM)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(Map.of("message", userMessage, "request_id", finalRequestId))
-                    .retrieve()
-                    .bodyToFlux(String.class)
-                    .subscribe(chunk -> {
-                        try {
-                            session.sendMessage(new TextMessage(chunk));
-                        } catch (IOException e) {
-                            /* ignore */ }
-                    }, err -> {
-                        try {
-                            session.sendMessage(new TextMessage("{\"error\": \"" + err.getMessage() + "\"}"));
-                        } catch (IOException ex) {
-                        }
-                    }, () -> {
-                        try {
-                            session.sendMessage(new TextMessage(
-                                    "{\"requestId\": \"" + finalRequestId + "\", \"status\": \"done\"}"));
-                        } catch (IOException e) {
-                        }
-                    });
-
-            activeStreams.put(finalRequestId, disp);
-
-        } catch (Exception e) {
-            session.sendMessage(new TextMessage("{\"error\": \"invalid-payload\"}"));
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        heartbeat(session).pong();
+    }
+
+    private static byte[] toBytes(BinaryMessage message) {
+        ByteBuffer payload = message.getPayload();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    private void handleCommand(WebSocketSession session, BufferedSessionSender out, ChatCommand command) {
+        switch (command.type()) {
+            case CANCEL -> {
+                // only streams of this session can be cancelled; the shared upstream
+                // notifies python once its last subscriber is gone
+                if (streams.release(session.getId(), command.requestId()) instanceof Attachment attachment) {
+                    attachment.cancel();
+                    cborStreams(session).remove(attachment.streamId, attachment);
+                    out.send(encoder(session, command.requestId(), command.streamId()).cancelled());
+                }
+            }
+            case RESUME -> resumeStream(session, out, command);
+            case START -> startStream(session, out, command);
+        }
+    }
+
+    private StreamEncoder encoder(WebSocketSession session, String requestId, long streamId) {
+        return ChatProtocol.of(session).encoder(requestId, streamId);
+    }
+
+    private void startStream(WebSocketSession session, BufferedSessionSender out, ChatCommand command) {
+        String userMessage = command.message();
+        final String finalRequestId = command.requestId() == null
+                ? java.util.UUID.randomUUID().toString()
+                : command.requestId();
+        long retryAfter = rateLimiter.tryAcquire(client(session));
+        if (retryAfter > 0) {
+            out.send(encoder(session, finalRequestId, command.streamId()).rateLimited(retryAfter));
+            return;
+        }
+        Deadline deadline = deadlines.start(command.timeoutMillis());
+        StreamTranscript transcript = chatStreams.transcript(userMessage, command.conversationId());
+        // a restart under the same requestId replaces this session's previous stream
+        if (streams.release(session.getId(), finalRequestId) instanceof Attachment previous) {
+            previous.cancel();
+        }
+        ResumableStream stream = resumable.open(finalRequestId);
+
+        // registered before subscribing so a cancel or disconnect racing the start is not lost
+        Attachment attachment = new Attachment(session, out, command.streamId(), finalRequestId, stream);
+        streams.register(session.getId(), finalRequestId, attachment);
+        if (resumable.isEnabled()) {
+            out.send(attachment.encoder.started(stream.resumeToken()));
+        }
+        stream.attach(attachment.output, 0);
+
+        // subscribe to Python SSE stream (shared with in-flight streams of the exact same
+        // question; unlike the answer cache, diacritics are not folded: "má" is not "ma");
+        // events are numbered and kept by the resumable stream, which forwards them
+        // to whichever connection is attached. The deadline bounds this subscriber
+        // only and is not passed on: callers who join later may have more time, and
+        // the shared call is cancelled once none is left
+        stream.upstream().update(deadline.bound(inFlightStreams
+                .flux(userMessage.strip(),
+                        () -> chatStreams.open(userMessage, finalRequestId, client(session).id(), Deadline.NONE)))
+                .doFinally(signal -> {
+                    resumable.ended(stream);
+                    chatStreams.persist(transcript, signal);
+                })
+                .subscribe(chunk -> {
+                    stream.onEvent(chunk);
+                    // record after forwarding so aggregation never delays the token
+                    transcript.append(chunk);
+                }, stream::onError, stream::onComplete));
+        if (!session.isOpen()) {
+            // closed while starting: afterConnectionClosed may already have run
+            streams.closeSession(session.getId());
+        }
+    }
+
+    private void resumeStream(WebSocketSession session, BufferedSessionSender out, ChatCommand command) {
+        String requestId = command.requestId();
+        ResumableStream stream = resumable.get(requestId, command.resumeToken());
+        Attachment attachment = stream == null ? null
+                : new Attachment(session, out, command.streamId(), requestId, stream);
+        if (attachment != null) {
+            streams.register(session.getId(), requestId, attachment);
+        }
+        if (!resumable.resume(stream, attachment == null ? null : attachment.output, command.lastSeq())) {
+            if (attachment != null) {
+                forget(session, attachment);
+            }
+            out.send(encoder(session, requestId, command.streamId()).error("resume_unavailable"));
+            return;
+        }
+        if (!session.isOpen()) {
+            streams.closeSession(session.getId());
+        }
+    }
+
+    private TokenCoalescer newCoalescer(WebSocketSession session, BufferedSessionSender out, StreamEncoder encoder) {
+        // plain JSON clients read one event per frame
+        long windowNanos = ChatProtocol.of(session).coalesces()
+                ? webSocketProperties.getCoalescing().getWindow().toNanos()
+                : 0;
+        return new TokenCoalescer(out, encoder, Schedulers.parallel(), windowNanos, maxFrameChars);
+    }
+
+    private void forget(WebSocketSession session, Attachment attachment) {
+        streams.remove(session.getId(), attachment.requestId, attachment);
+        cborStreams(session).remove(attachment.streamId, attachment);
+    }
+
+    /**
+     * A stream as seen by one connection. Disposing it (connection closed)
+     * detaches the connection and leaves the stream to the grace period.
+     */
+    private final class Attachment implements Disposable {
+        private final long streamId;
+        private final String requestId;
+        private final ResumableStream stream;
+        private final StreamEncoder encoder;
+        private final StreamOutput output;
+
+        Attachment(WebSocketSession session, BufferedSessionSender out, long streamId, String requestId,
+                ResumableStream stream) {
+            this.streamId = streamId;
+            this.requestId = requestId;
+            this.stream = stream;
+            this.encoder = encoder(session, requestId, streamId);
+            this.output = new StreamOutput(out, encoder, newCoalescer(session, out, encoder), maxFrameChars,
+                    () -> forget(session, this));
+            if (streamId != ChatCommand.NO_STREAM_ID) {
+                cborStreams(session).put(streamId, this);
+            }
+        }
+
+        void cancel() {
+            resumable.cancel(stream, output);
+        }
+
+        @Override
+        public void dispose() {
+            resumable.detach(stream, output);
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, org.springframework.web.socket.CloseStatus status)
             throws Exception {
-        // Optional: clean up any subscriptions associated with this session if you
-        // track them per-session
+        SessionReaper.Session heartbeat = heartbeat(session);
+        if (heartbeat != null) {
+            heartbeat.stop();
+        }
+        release(session, status);
         super.afterConnectionClosed(session, status);
     }
+
+    // on close, and when the reaper gives up on a dead or idle session
+    private void release(WebSocketSession session, org.springframework.web.socket.CloseStatus status) {
+        // detach every stream the client left behind; unless resumed within the grace
+        // period they are disposed, which cancels upstream generation too
+        streams.closeSession(session.getId());
+        BufferedSessionSender out = sender(session);
+        if (out != null) {
+            out.close(status);
+        }
+    }
 }
 
 // curl -N -H "Content-Type: application/json" -d "{\"message\":\"Ai là Tuan?\",\"request_id\":\"t1\"}" http://localhost:8000/api/llm/stream
\ No newline at end of file
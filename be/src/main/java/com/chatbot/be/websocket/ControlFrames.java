@@ -0,0 +1,116 @@
+package com.chatbot.be.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.web.socket.TextMessage;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * Outbound control frames built from pre-encoded UTF-8 templates: the
+ * constant parts are byte arrays encoded once, the request id is encoded
+ * (and JSON-escaped when needed) once per stream by {@link #requestId}, and
+ * a frame is the two copied together. A {@link TextMessage} built from the
+ * bytes knows its payload length without encoding the text again. Frames
+ * without variable parts are shared {@link TextMessage} instances.
+ */
+final class ControlFrames {
+
+    static final TextMessage INVALID_PAYLOAD = new TextMessage("{\"error\": \"invalid-payload\"}");
+
+    private static final byte[] REQUEST_ID_PREFIX = utf8("{\"requestId\": \"");
+    private static final String STARTED_SUFFIX = "\", \"status\": \"started\", \"resumeToken\": \"";
+    private static final byte[] DONE_SUFFIX = utf8("\", \"status\": \"done\"}");
+    private static final byte[] CANCELLED_SUFFIX = utf8("\", \"status\": \"cancelled\"}");
+    private static final byte[] DEADLINE_EXCEEDED_SUFFIX = utf8("\", \"status\": \"deadline_exceeded\"}");
+    // one per error code; the codes are a fixed set
+    private static final Map<String, byte[]> ERROR_SUFFIXES = new ConcurrentHashMap<>();
+    private static final String RATE_LIMITED_SUFFIX =
+            "\", \"status\": \"error\", \"error\": \"rate_limited\", \"retryAfterMs\": ";
+    private static final byte[] FAILURE_PREFIX = utf8("{\"error\": \"");
+    private static final byte[] FAILURE_SUFFIX = utf8("\"}");
+
+    // ASCII that JSON strings must escape: control characters, quote and backslash
+    private static final boolean[] ESCAPED = new boolean[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPED[c] = true;
+        }
+        ESCAPED['"'] = true;
+        ESCAPED['\\'] = true;
+    }
+
+    private ControlFrames() {
+    }
+
+    /**
+     * {@code requestId} as it appears in a frame: UTF-8, JSON-escaped when
+     * needed. Encoded once per stream and passed to the methods below.
+     */
+    static byte[] requestId(String requestId) {
+        return escape(requestId);
+    }
+
+    /** {@code resumeToken} is one the server made and is not escaped. */
+    static byte[] started(byte[] requestId, String resumeToken) {
+        return frame(requestId, utf8(STARTED_SUFFIX + resumeToken + "\"}"));
+    }
+
+    static byte[] done(byte[] requestId) {
+        return frame(requestId, DONE_SUFFIX);
+    }
+
+    static byte[] cancelled(byte[] requestId) {
+        return frame(requestId, CANCELLED_SUFFIX);
+    }
+
+    static byte[] deadlineExceeded(byte[] requestId) {
+        return frame(requestId, DEADLINE_EXCEEDED_SUFFIX);
+    }
+
+    /** {@code code} is one of the fixed error codes and is not escaped. */
+    static byte[] error(byte[] requestId, String code) {
+        return frame(requestId, ERROR_SUFFIXES.computeIfAbsent(code,
+                c -> utf8("\", \"status\": \"error\", \"error\": \"" + c + "\"}")));
+    }
+
+    static byte[] rateLimited(byte[] requestId, long retryAfterMillis) {
+        return frame(requestId, utf8(RATE_LIMITED_SUFFIX + retryAfterMillis + "}"));
+    }
+
+    /** Frame for an unexpected failure; the message is free text and always escaped. */
+    static byte[] failure(String message) {
+        byte[] text = escape(String.valueOf(message));
+        byte[] frame = new byte[FAILURE_PREFIX.length + text.length + FAILURE_SUFFIX.length];
+        System.arraycopy(FAILURE_PREFIX, 0, frame, 0, FAILURE_PREFIX.length);
+        System.arraycopy(text, 0, frame, FAILURE_PREFIX.length, text.length);
+        System.arraycopy(FAILURE_SUFFIX, 0, frame, FAILURE_PREFIX.length + text.length, FAILURE_SUFFIX.length);
+        return frame;
+    }
+
+    private static byte[] frame(byte[] requestId, byte[] suffix) {
+        byte[] frame = new byte[REQUEST_ID_PREFIX.length + requestId.length + suffix.length];
+        System.arraycopy(REQUEST_ID_PREFIX, 0, frame, 0, REQUEST_ID_PREFIX.length);
+        System.arraycopy(requestId, 0, frame, REQUEST_ID_PREFIX.length, requestId.length);
+        System.arraycopy(suffix, 0, frame, REQUEST_ID_PREFIX.length + requestId.length, suffix.length);
+        return frame;
+    }
+
+    /** {@code s} as UTF-8, JSON-escaped if it has anything to escape. */
+    private static byte[] escape(String s) {
+        byte[] utf8 = utf8(s);
+        boolean escape = false;
+        for (byte b : utf8) {
+            // bytes of multi-byte characters are negative and never need escaping
+            escape |= b >= 0 && ESCAPED[b];
+        }
+        return escape ? JsonStringEncoder.getInstance().quoteAsUTF8(s) : utf8;
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,69 @@
+package com.chatbot.be.websocket;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * permessage-deflate metrics for {@code /ws/chat}, one observation per closed
+ * session: summary {@code chatbot.ws.deflate.ratio} (bytes before / after
+ * compression) and timer {@code chatbot.ws.deflate.cpu} (CPU time spent
+ * compressing the session's frames). Both come from the sessions sampled by
+ * {@link DeflateSampler}. Counter {@code chatbot.ws.deflate.sessions} is
+ * tagged with whether the extension was negotiated.
+ */
+@Component
+public class DeflateMetrics {
+
+    private final double sampleRate;
+    private final DistributionSummary ratio;
+    private final Timer cpu;
+    private final Counter negotiated;
+    private final Counter plain;
+
+    public DeflateMetrics(WebSocketProperties properties, MeterRegistry meterRegistry) {
+        this.sampleRate = properties.getCompression().getMetricsSampleRate();
+        this.ratio = DistributionSummary.builder("chatbot.ws.deflate.ratio")
+                .publishPercentiles(0.5, 0.9)
+                .register(meterRegistry);
+        this.cpu = Timer.builder("chatbot.ws.deflate.cpu").register(meterRegistry);
+        this.negotiated = Counter.builder("chatbot.ws.deflate.sessions").tag("negotiated", "true")
+                .register(meterRegistry);
+        this.plain = Counter.builder("chatbot.ws.deflate.sessions").tag("negotiated", "false")
+                .register(meterRegistry);
+    }
+
+    /** Sampler for a newly opened session, or null if it is not compressed or not sampled. */
+    DeflateSampler forSession(WebSocketSession session) {
+        WebSocketExtension deflate = session.getExtensions().stream()
+                .filter(e -> DeflateUpgradeStrategy.PERMESSAGE_DEFLATE.equals(e.getName()))
+                .findFirst()
+                .orElse(null);
+        if (deflate == null) {
+            plain.increment();
+            return null;
+        }
+        negotiated.increment();
+        // whole sessions, not frames: with context takeover a frame's size depends on all before it
+        if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        boolean contextTakeover = !deflate.getParameters().containsKey(DeflateUpgradeStrategy.SERVER_NO_CONTEXT_TAKEOVER);
+        return new DeflateSampler(this, contextTakeover);
+    }
+
+    void record(long rawBytes, long deflatedBytes, long cpuNanos) {
+        ratio.record((double) rawBytes / deflatedBytes);
+        cpu.record(cpuNanos, TimeUnit.NANOSECONDS);
+    }
+}
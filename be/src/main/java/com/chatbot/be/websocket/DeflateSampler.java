@@ -0,0 +1,89 @@
+package com.chatbot.be.websocket;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Measures what permessage-deflate costs and saves on one sampled session.
+ * The container's deflater is not observable, so every frame the session
+ * sent is deflated again with the same settings (default level, raw deflate,
+ * sync flush, context kept unless negotiated otherwise). With context
+ * takeover a frame compresses against all the frames before it, so only the
+ * whole session reproduces the container's ratio; {@link DeflateMetrics}
+ * picks the sessions. The deflater is created with the first frame. Totals
+ * are reported once the session closes.
+ */
+class DeflateSampler {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final DeflateMetrics metrics;
+    private final boolean contextTakeover;
+    private Deflater deflater;
+    private byte[] out;
+
+    private long rawBytes;
+    private long deflatedBytes;
+    private long cpuNanos;
+    private boolean finished;
+
+    DeflateSampler(DeflateMetrics metrics, boolean contextTakeover) {
+        this.metrics = metrics;
+        this.contextTakeover = contextTakeover;
+    }
+
+    synchronized void sample(WebSocketMessage<?> message) {
+        if (finished) {
+            return;
+        }
+        ByteBuffer payload;
+        if (message instanceof TextMessage text) {
+            payload = ByteBuffer.wrap(text.asBytes());
+        } else if (message instanceof BinaryMessage binary) {
+            payload = binary.getPayload().duplicate();
+        } else {
+            return;
+        }
+        long started = cpuTime();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            out = new byte[8 * 1024];
+        }
+        rawBytes += payload.remaining();
+        if (!contextTakeover) {
+            deflater.reset();
+        }
+        deflater.setInput(payload);
+        int n;
+        do {
+            n = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+            deflatedBytes += n;
+        } while (n == out.length);
+        // the 4-byte sync-flush tail is stripped on the wire
+        deflatedBytes -= 4;
+        cpuNanos += cpuTime() - started;
+    }
+
+    synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (rawBytes > 0) {
+            metrics.record(rawBytes, Math.max(deflatedBytes, 1), cpuNanos);
+        }
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
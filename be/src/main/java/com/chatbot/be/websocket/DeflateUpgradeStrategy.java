@@ -0,0 +1,128 @@
+package com.chatbot.be.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrategy;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.Extension;
+import jakarta.websocket.HandshakeResponse;
+import jakarta.websocket.server.HandshakeRequest;
+import jakarta.websocket.server.ServerEndpointConfig;
+
+/**
+ * Tomcat upgrade that applies {@link WebSocketProperties.Compression} to the
+ * permessage-deflate offers of the client. Tomcat negotiates extensions from
+ * the request headers through the endpoint's configurator, not from the list
+ * Spring filtered, so the configurator is wrapped here: offers are dropped
+ * when compression is disabled and get {@code *_no_context_takeover}
+ * parameters when context takeover is turned off (RFC 7692 lets the server
+ * add both even if the client did not ask).
+ */
+class DeflateUpgradeStrategy extends TomcatRequestUpgradeStrategy {
+
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+    private final WebSocketProperties.Compression cfg;
+
+    DeflateUpgradeStrategy(WebSocketProperties.Compression cfg) {
+        this.cfg = cfg;
+    }
+
+    @Override
+    protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+            ServerEndpointConfig endpointConfig, Map<String, String> pathParams) throws Exception {
+        ServerEndpointConfig negotiating = ServerEndpointConfig.Builder
+                .create(endpointConfig.getEndpointClass(), endpointConfig.getPath())
+                .subprotocols(endpointConfig.getSubprotocols())
+                .extensions(endpointConfig.getExtensions())
+                .configurator(new Negotiation(endpointConfig.getConfigurator()))
+                .build();
+        super.upgradeHttpToWebSocket(request, response, negotiating, pathParams);
+    }
+
+    List<Extension> negotiate(List<Extension> offered) {
+        List<Extension> negotiated = new ArrayList<>(offered.size());
+        for (Extension extension : offered) {
+            if (!PERMESSAGE_DEFLATE.equals(extension.getName())) {
+                negotiated.add(extension);
+            } else if (cfg.isEnabled()) {
+                negotiated.add(withContextTakeover(extension));
+            }
+        }
+        return negotiated;
+    }
+
+    private Extension withContextTakeover(Extension offer) {
+        List<Extension.Parameter> params = new ArrayList<>(offer.getParameters());
+        if (!cfg.isServerContextTakeover() && !has(params, SERVER_NO_CONTEXT_TAKEOVER)) {
+            params.add(new Param(SERVER_NO_CONTEXT_TAKEOVER));
+        }
+        if (!cfg.isClientContextTakeover() && !has(params, CLIENT_NO_CONTEXT_TAKEOVER)) {
+            params.add(new Param(CLIENT_NO_CONTEXT_TAKEOVER));
+        }
+        if (params.size() == offer.getParameters().size()) {
+            return offer;
+        }
+        return new Extension() {
+            @Override
+            public String getName() {
+                return PERMESSAGE_DEFLATE;
+            }
+
+            @Override
+            public List<Parameter> getParameters() {
+                return params;
+            }
+        };
+    }
+
+    private static boolean has(List<Extension.Parameter> params, String name) {
+        return params.stream().anyMatch(p -> name.equals(p.getName()));
+    }
+
+    private record Param(String name) implements Extension.Parameter {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getValue() {
+            return null;
+        }
+    }
+
+    /** Spring's registration, except for extension negotiation. */
+    private final class Negotiation extends ServerEndpointConfig.Configurator {
+
+        private final ServerEndpointConfig.Configurator delegate;
+
+        Negotiation(ServerEndpointConfig.Configurator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public <T> T getEndpointInstance(Class<T> endpointClass) throws InstantiationException {
+            return delegate.getEndpointInstance(endpointClass);
+        }
+
+        @Override
+        public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+            delegate.modifyHandshake(sec, request, response);
+        }
+
+        @Override
+        public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+            return negotiate(delegate.getNegotiatedExtensions(installed, requested));
+        }
+    }
+}
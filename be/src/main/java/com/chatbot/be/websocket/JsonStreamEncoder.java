@@ -0,0 +1,96 @@
+package com.chatbot.be.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * The text protocols: upstream events are forwarded with the subscriber's
+ * requestId and their {@code seq}, one per frame, or with {@code batch} as a
+ * JSON array of events per frame; control frames come from
+ * {@link ControlFrames}.
+ */
+class JsonStreamEncoder implements StreamEncoder {
+
+    private final String requestId;
+    private final boolean batch;
+    // for control frames; encoded on first use, most streams send one
+    private byte[] frameRequestId;
+
+    JsonStreamEncoder(String requestId, boolean batch) {
+        this.requestId = requestId;
+        this.batch = batch;
+    }
+
+    private byte[] frameRequestId() {
+        if (frameRequestId == null) {
+            frameRequestId = ControlFrames.requestId(requestId);
+        }
+        return frameRequestId;
+    }
+
+    @Override
+    public List<WebSocketMessage<?>> tokens(long firstSeq, List<String> events) {
+        if (!batch) {
+            if (events.size() == 1) {
+                return List.of(new TextMessage(event(events.get(0), firstSeq)));
+            }
+            List<WebSocketMessage<?>> frames = new ArrayList<>(events.size());
+            long seq = firstSeq;
+            for (String event : events) {
+                frames.add(new TextMessage(event(event, seq++)));
+            }
+            return frames;
+        }
+        StringBuilder sb = new StringBuilder(events.size() * 64).append('[');
+        long seq = firstSeq;
+        for (String event : events) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(event(event, seq++));
+        }
+        return List.of(new TextMessage(sb.append(']')));
+    }
+
+    private String event(String event, long seq) {
+        return SseEvents.withSeq(SseEvents.withRequestId(event, requestId), seq);
+    }
+
+    @Override
+    public WebSocketMessage<?> started(String resumeToken) {
+        return new TextMessage(ControlFrames.started(frameRequestId(), resumeToken));
+    }
+
+    @Override
+    public WebSocketMessage<?> done() {
+        return new TextMessage(ControlFrames.done(frameRequestId()));
+    }
+
+    @Override
+    public WebSocketMessage<?> cancelled() {
+        return new TextMessage(ControlFrames.cancelled(frameRequestId()));
+    }
+
+    @Override
+    public WebSocketMessage<?> error(String code) {
+        return new TextMessage(ControlFrames.error(frameRequestId(), code));
+    }
+
+    @Override
+    public WebSocketMessage<?> rateLimited(long retryAfterMillis) {
+        return new TextMessage(ControlFrames.rateLimited(frameRequestId(), retryAfterMillis));
+    }
+
+    @Override
+    public WebSocketMessage<?> deadlineExceeded() {
+        return new TextMessage(ControlFrames.deadlineExceeded(frameRequestId()));
+    }
+
+    @Override
+    public WebSocketMessage<?> failure(String message) {
+        return new TextMessage(ControlFrames.failure(message));
+    }
+}
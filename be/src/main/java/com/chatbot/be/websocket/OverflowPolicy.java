@@ -0,0 +1,12 @@
+package com.chatbot.be.websocket;
+
+/**
+ * What {@link BufferedSessionSender} does when a session's send buffer goes
+ * over its size limit.
+ */
+public enum OverflowPolicy {
+    /** Drop the oldest buffered token frames until the buffer fits again; other frames are kept. */
+    DROP,
+    /** Close the session. */
+    CLOSE
+}
@@ -0,0 +1,89 @@
+package com.chatbot.be.websocket;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+import org.springframework.web.server.WebHandler;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+
+import com.chatbot.be.config.WebSocketProperties;
+import com.chatbot.be.ratelimit.ChatRateLimiter;
+import com.chatbot.be.upstream.Deadlines;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.WebsocketServerSpec;
+
+/**
+ * Reactor Netty server for {@link ReactiveChatWebSocketHandler} on
+ * {@code chatbot.websocket.reactive.port}, next to the servlet container.
+ * Connections cost no thread of their own: frames are read and written on
+ * Netty's event loops. Enabled with {@code chatbot.websocket.reactive.enabled}.
+ * <p>
+ * permessage-deflate follows {@code chatbot.websocket.compression}; Netty
+ * lets clients ask for server_no_context_takeover and can itself prefer
+ * client_no_context_takeover, but its level is fixed as on Tomcat.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chatbot.websocket.reactive", name = "enabled", havingValue = "true")
+public class ReactiveChatServer {
+
+    static final String PATH = "/ws/chat";
+
+    private final ReactiveChatWebSocketHandler handler;
+    private final WebSocketProperties properties;
+    private DisposableServer server;
+
+    public ReactiveChatServer(ChatStreams chatStreams, WebSocketProperties properties, ChatRateLimiter rateLimiter,
+            Deadlines deadlines, MeterRegistry meterRegistry) {
+        this.handler = new ReactiveChatWebSocketHandler(chatStreams, properties, rateLimiter, deadlines,
+                meterRegistry);
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void start() {
+        WebSocketProperties.Compression compression = properties.getCompression();
+        int maxFrameSize = (int) properties.getInbound().getMaxFrameSize().toBytes();
+        HandshakeWebSocketService handshake = new HandshakeWebSocketService(
+                new ReactorNettyRequestUpgradeStrategy(() -> WebsocketServerSpec.builder()
+                        .compress(compression.isEnabled())
+                        .compressionAllowServerNoContext(true)
+                        .compressionPreferredClientNoContext(!compression.isClientContextTakeover())
+                        .maxFramePayloadLength(maxFrameSize)));
+        WebHandler webHandler = exchange -> {
+            if (PATH.equals(exchange.getRequest().getPath().value())) {
+                return handshake.handleRequest(exchange, handler);
+            }
+            exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
+            return Mono.empty();
+        };
+        HttpHandler httpHandler = WebHttpHandlerBuilder.webHandler(webHandler).build();
+        server = HttpServer.create()
+                .port(properties.getReactive().getPort())
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        log.info("Reactive chat socket listening on port {}{}", server.port(), PATH);
+    }
+
+    public int port() {
+        return server.port();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.chatbot.be.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import com.chatbot.be.config.WebSocketProperties;
+import com.chatbot.be.ratelimit.ChatRateLimiter;
+import com.chatbot.be.upstream.Deadline;
+import com.chatbot.be.upstream.DeadlineExceededException;
+import com.chatbot.be.upstream.Deadlines;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Reactive counterpart of {@link ChatWebSocketHandler}, served by
+ * {@link ReactiveChatServer}. Same start/cancel frames and subprotocols, but
+ * the outbound {@code Flux} is the upstream {@code bodyToFlux} itself: when
+ * the client reads slowly Netty stops requesting, and the SSE read from
+ * python stops with it instead of frames piling up in a send buffer.
+ * <p>
+ * For the same reason identical questions are not shared here (a replayed
+ * upstream would run at the pace of its fastest reader). Token events are
+ * merged with a demand-aware {@code bufferTimeout} where the protocol allows
+ * it; the first one goes out on its own. With the JSON protocols the
+ * upstream bytes themselves become the frame (see {@link SseFramer});
+ * nothing is decoded on the way through.
+ * <p>
+ * Reactor Netty only answers pings, so sessions are pinged and reaped here
+ * by the rules of {@link SessionReaper}, counted in the same
+ * {@code chatbot.ws.reaped}. Pings are a second outbound {@code Flux} next
+ * to the frames, so they do not wait for a slow reader's demand.
+ */
+public class ReactiveChatWebSocketHandler implements WebSocketHandler {
+
+    private static final byte[] BATCH_START = { '[' };
+    private static final byte[] BATCH_SEPARATOR = { ',' };
+    private static final byte[] BATCH_END = { ']' };
+    private static final byte[] NO_PAYLOAD = {};
+    // closed for the same reasons, with the same codes, as on the servlet endpoint
+    private static final CloseStatus DEAD = reactive(org.springframework.web.socket.CloseStatus.SESSION_NOT_RELIABLE);
+    private static final CloseStatus IDLE = reactive(SessionReaper.IDLE);
+
+    private final ChatStreams chatStreams;
+    private final ChatCommandDecoder decoder;
+    private final Duration window;
+    private final int maxEventsPerFrame;
+    private final int maxStreamsPerSession;
+    private final ChatRateLimiter rateLimiter;
+    private final Deadlines deadlines;
+    private final Duration pingInterval;
+    private final long idleTimeoutNanos;
+    private final Counter dead;
+    private final Counter idle;
+
+    public ReactiveChatWebSocketHandler(ChatStreams chatStreams, WebSocketProperties webSocketProperties,
+            ChatRateLimiter rateLimiter, Deadlines deadlines, MeterRegistry meterRegistry) {
+        this.chatStreams = chatStreams;
+        this.rateLimiter = rateLimiter;
+        this.deadlines = deadlines;
+        WebSocketProperties.Inbound inbound = webSocketProperties.getInbound();
+        this.decoder = new ChatCommandDecoder((int) inbound.getMaxFrameSize().toBytes(),
+                inbound.getMaxMessageLength());
+        this.window = webSocketProperties.getCoalescing().getWindow();
+        this.maxEventsPerFrame = webSocketProperties.getReactive().getMaxEventsPerFrame();
+        this.maxStreamsPerSession = webSocketProperties.getReactive().getMaxStreamsPerSession();
+        this.pingInterval = webSocketProperties.getHeartbeat().getPingInterval();
+        this.idleTimeoutNanos = webSocketProperties.getHeartbeat().getIdleTimeout().toNanos();
+        this.dead = Counter.builder("chatbot.ws.reaped").tag("reason", "dead").register(meterRegistry);
+        this.idle = Counter.builder("chatbot.ws.reaped").tag("reason", "idle").register(meterRegistry);
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return ChatProtocol.NAMES;
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        ChatProtocol protocol = ChatProtocol.of(session.getHandshakeInfo().getSubProtocol());
+        Map<String, Stream> active = new ConcurrentHashMap<>();
+        Map<Long, Stream> cborStreams = new ConcurrentHashMap<>();
+        // nothing authenticates this server: clients are charged by address
+        ChatRateLimiter.Client client = rateLimiter.client(null, session.getHandshakeInfo().getRemoteAddress());
+        Heartbeat heartbeat = new Heartbeat();
+        // unbounded concurrency so cancels are still read while streams run;
+        // the number of streams is capped per session instead
+        Flux<WebSocketMessage> frames = session.receive()
+                .filter(heartbeat::received)
+                .flatMap(frame -> handleFrame(session, protocol, client, active, cborStreams, frame),
+                        Integer.MAX_VALUE)
+                // whatever was read ahead of the client when the connection goes
+                .doOnDiscard(Object.class, ReactiveChatWebSocketHandler::release);
+        if (pingInterval.isZero()) {
+            return session.send(frames);
+        }
+        Flux<WebSocketMessage> pings = Flux.interval(pingInterval)
+                .takeWhile(tick -> heartbeat.alive(active.isEmpty()))
+                .map(tick -> session.pingMessage(factory -> factory.wrap(NO_PAYLOAD)));
+        // a reaped session ends here, which cancels its streams
+        return Mono.firstWithSignal(session.send(frames),
+                session.send(pings).then(Mono.defer(() -> session.close(heartbeat.reason))));
+    }
+
+    private Flux<WebSocketMessage> handleFrame(WebSocketSession session, ChatProtocol protocol,
+            ChatRateLimiter.Client client, Map<String, Stream> active, Map<Long, Stream> cborStreams,
+            WebSocketMessage frame) {
+        boolean binary = frame.getType() == WebSocketMessage.Type.BINARY;
+        ChatCommand command;
+        try {
+            command = binary ? decoder.decode(toBytes(frame.getPayload())) : decoder.decode(frame.getPayloadAsText());
+        } catch (IllegalArgumentException e) {
+            return Flux.just(toReactive(session, binary
+                    ? new CborStreamEncoder(ChatCommand.NO_STREAM_ID).error("invalid-payload")
+                    : ControlFrames.INVALID_PAYLOAD));
+        }
+        if (command.type() == ChatCommand.Type.CANCEL) {
+            // a CBOR cancel names the stream id only; the stream may run under the client's requestId
+            Stream stream = binary ? cborStreams.get(command.streamId()) : active.get(command.requestId());
+            if (stream == null) {
+                // not running (any more): its last frame has been sent
+                return Flux.empty();
+            }
+            stream.cancel();
+            return Flux.just(toReactive(session, protocol.encoder(stream.requestId, command.streamId()).cancelled()));
+        }
+        if (binary && command.requestId() == null) {
+            // stream ids are only unique per connection
+            command = command.withRequestId("cbor-" + session.getId() + "-" + command.streamId());
+        }
+
+        String requestId = command.requestId() == null ? UUID.randomUUID().toString() : command.requestId();
+        StreamEncoder encoder = protocol.encoder(requestId, command.streamId());
+        if (command.type() == ChatCommand.Type.RESUME) {
+            // streams here end with their connection; there is nothing to resume
+            return Flux.just(toReactive(session, encoder.error("resume_unavailable")));
+        }
+        if (active.size() >= maxStreamsPerSession && !active.containsKey(requestId)) {
+            return Flux.just(toReactive(session, encoder.error("too_many_streams")));
+        }
+        long retryAfter = rateLimiter.tryAcquire(client);
+        if (retryAfter > 0) {
+            return Flux.just(toReactive(session, encoder.rateLimited(retryAfter)));
+        }
+        return startStream(session, protocol, client, command, requestId, encoder, active, cborStreams);
+    }
+
+    private Flux<WebSocketMessage> startStream(WebSocketSession session, ChatProtocol protocol,
+            ChatRateLimiter.Client client, ChatCommand command, String requestId, StreamEncoder encoder,
+            Map<String, Stream> active, Map<Long, Stream> cborStreams) {
+        Stream stream = new Stream(requestId);
+        Stream previous = active.put(requestId, stream);
+        if (previous != null) {
+            previous.cancel();
+        }
+        if (command.streamId() != ChatCommand.NO_STREAM_ID) {
+            cborStreams.put(command.streamId(), stream);
+        }
+        StreamTranscript transcript = chatStreams.transcript(command.message(), command.conversationId());
+        AtomicLong nextSeq = new AtomicLong(1);
+        Deadline deadline = deadlines.start(command.timeoutMillis());
+        return deadline.bound(chatStreams.openEvents(command.message(), requestId, client.id(), deadline))
+                .doOnNext(transcript::append)
+                .takeUntilOther(stream.stop.asMono())
+                .switchOnFirst((first, events) -> first.hasValue()
+                        ? Flux.concat(Mono.just(List.of(first.get())),
+                                coalesce(protocol, afterFirst(events, first.get())))
+                        : events.map(List::of))
+                .concatMapIterable(events -> tokens(session, protocol, encoder, nextSeq.getAndAdd(events.size()),
+                        events))
+                .concatWith(Mono.fromSupplier(() -> stream.cancelled ? null : toReactive(session, encoder.done())))
+                .onErrorResume(err -> Mono.just(toReactive(session, err instanceof DeadlineExceededException
+                        ? encoder.deadlineExceeded()
+                        : err instanceof CallNotPermittedException
+                                ? encoder.error("upstream_unavailable")
+                                : encoder.failure(err.getMessage()))))
+                .doFinally(signal -> {
+                    active.remove(requestId, stream);
+                    cborStreams.remove(command.streamId(), stream);
+                    chatStreams.persist(transcript, stream.cancelled ? SignalType.CANCEL : signal);
+                });
+    }
+
+    /** The frames for some token events; takes ownership of the event buffers. */
+    private static List<WebSocketMessage> tokens(WebSocketSession session, ChatProtocol protocol,
+            StreamEncoder encoder, long firstSeq, List<DataBuffer> events) {
+        // python is called with the client's own requestId here, so the events already
+        // carry it and only their seq is added
+        if (protocol == ChatProtocol.JSON) {
+            List<WebSocketMessage> frames = new ArrayList<>(events.size());
+            long seq = firstSeq;
+            for (DataBuffer event : events) {
+                frames.add(new WebSocketMessage(WebSocketMessage.Type.TEXT, SseEvents.withSeq(event, seq++)));
+            }
+            return frames;
+        }
+        if (protocol == ChatProtocol.JSON_BATCH) {
+            DataBufferFactory factory = events.get(0).factory();
+            List<DataBuffer> parts = new ArrayList<>(events.size() * 2 + 1);
+            parts.add(factory.wrap(BATCH_START));
+            long seq = firstSeq;
+            for (DataBuffer event : events) {
+                if (parts.size() > 1) {
+                    parts.add(factory.wrap(BATCH_SEPARATOR));
+                }
+                parts.add(SseEvents.withSeq(event, seq++));
+            }
+            parts.add(factory.wrap(BATCH_END));
+            return List.of(new WebSocketMessage(WebSocketMessage.Type.TEXT, factory.join(parts)));
+        }
+        List<String> decoded = new ArrayList<>(events.size());
+        for (DataBuffer event : events) {
+            decoded.add(event.toString(StandardCharsets.UTF_8));
+            DataBufferUtils.release(event);
+        }
+        List<WebSocketMessage> frames = new ArrayList<>();
+        for (org.springframework.web.socket.WebSocketMessage<?> frame : encoder.tokens(firstSeq, decoded)) {
+            frames.add(toReactive(session, frame));
+        }
+        return frames;
+    }
+
+    // not skip(1): that discards, and so releases, the event already sent on its own
+    private static Flux<DataBuffer> afterFirst(Flux<DataBuffer> events, DataBuffer first) {
+        return events.handle((event, sink) -> {
+            if (event != first) {
+                sink.next(event);
+            }
+        });
+    }
+
+    private <T> Flux<List<T>> coalesce(ChatProtocol protocol, Flux<T> events) {
+        if (!protocol.coalesces() || window.isZero() || maxEventsPerFrame <= 1) {
+            return events.map(List::of);
+        }
+        return events.bufferTimeout(maxEventsPerFrame, window, true);
+    }
+
+    /** Frees a discarded event, batch of events or frame. */
+    private static void release(Object discarded) {
+        if (discarded instanceof DataBuffer buffer) {
+            DataBufferUtils.release(buffer);
+        } else if (discarded instanceof WebSocketMessage frame) {
+            frame.release();
+        } else if (discarded instanceof List<?> batch) {
+            batch.forEach(ReactiveChatWebSocketHandler::release);
+        }
+    }
+
+    private static byte[] toBytes(DataBuffer payload) {
+        byte[] bytes = new byte[payload.readableByteCount()];
+        payload.read(bytes);
+        return bytes;
+    }
+
+    private static CloseStatus reactive(org.springframework.web.socket.CloseStatus status) {
+        return new CloseStatus(status.getCode(), status.getReason());
+    }
+
+    private static WebSocketMessage toReactive(WebSocketSession session,
+            org.springframework.web.socket.WebSocketMessage<?> message) {
+        if (message instanceof BinaryMessage binary) {
+            return session.binaryMessage(factory -> factory.wrap(binary.getPayload()));
+        }
+        // the UTF-8 the frame was built from, when it was
+        return new WebSocketMessage(WebSocketMessage.Type.TEXT,
+                session.bufferFactory().wrap(((TextMessage) message).asBytes()));
+    }
+
+    /** Liveness of one session, judged as {@link SessionReaper} does. */
+    private final class Heartbeat {
+        private volatile long lastFrame = System.nanoTime();
+        private volatile long lastSeen = lastFrame;
+        // only touched by the ping ticks, one at a time
+        private long lastPing;
+        private CloseStatus reason;
+
+        /** Any frame shows the client is alive; false for those that are not commands. */
+        boolean received(WebSocketMessage frame) {
+            long now = System.nanoTime();
+            lastSeen = now;
+            boolean command = frame.getType() == WebSocketMessage.Type.TEXT
+                    || frame.getType() == WebSocketMessage.Type.BINARY;
+            if (command) {
+                lastFrame = now;
+            }
+            return command;
+        }
+
+        /** True if the session is to be pinged again; otherwise {@link #reason} says why it ends. */
+        boolean alive(boolean noStreams) {
+            long now = System.nanoTime();
+            if (lastPing != 0 && lastSeen - lastPing < 0) {
+                dead.increment();
+                reason = DEAD;
+                return false;
+            }
+            if (idleTimeoutNanos > 0 && now - lastFrame >= idleTimeoutNanos && noStreams) {
+                idle.increment();
+                reason = IDLE;
+                return false;
+            }
+            lastPing = now;
+            return true;
+        }
+    }
+
+    /** A running stream of one session; cancelling completes it without a done frame. */
+    private static final class Stream {
+        final String requestId;
+        final Sinks.Empty<Void> stop = Sinks.empty();
+        volatile boolean cancelled;
+
+        Stream(String requestId) {
+            this.requestId = requestId;
+        }
+
+        void cancel() {
+            cancelled = true;
+            stop.tryEmitEmpty();
+        }
+    }
+}
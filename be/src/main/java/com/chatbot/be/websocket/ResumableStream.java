@@ -0,0 +1,135 @@
+package com.chatbot.be.websocket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+/**
+ * One upstream stream that outlives the connection it was started on. Events
+ * are numbered from 1 and the latest {@code capacity} are kept, so a client
+ * that reconnects can be sent what it missed and then follow the live
+ * stream. At most one {@link StreamOutput} is attached at a time; the
+ * upstream subscription is only disposed by {@link #dispose()}. Only a
+ * client that presents {@code resumeToken}, which is sent to the one that
+ * started the stream, can attach to it again.
+ */
+class ResumableStream {
+
+    private final String requestId;
+    private final String resumeToken;
+    private final int capacity;
+    private final ArrayDeque<String> recent = new ArrayDeque<>();
+    private final Disposable.Swap upstream = Disposables.swap();
+
+    private long lastSeq;
+    private StreamOutput output;
+    // bumped on every detach so a stale expiry can tell it was resumed meanwhile
+    private long detachments;
+    private boolean completed;
+    private Throwable error;
+
+    ResumableStream(String requestId, String resumeToken, int capacity) {
+        this.requestId = requestId;
+        this.resumeToken = resumeToken;
+        this.capacity = capacity;
+    }
+
+    String requestId() {
+        return requestId;
+    }
+
+    String resumeToken() {
+        return resumeToken;
+    }
+
+    /** Holder for the upstream subscription; disposing it early cancels the subscription once set. */
+    Disposable.Swap upstream() {
+        return upstream;
+    }
+
+    synchronized void onEvent(String event) {
+        lastSeq++;
+        if (capacity > 0) {
+            if (recent.size() == capacity) {
+                recent.poll();
+            }
+            recent.add(event);
+        }
+        if (output != null) {
+            output.event(lastSeq, event);
+        }
+    }
+
+    synchronized void onComplete() {
+        completed = true;
+        if (output != null) {
+            output.complete();
+        }
+    }
+
+    synchronized void onError(Throwable err) {
+        error = err;
+        if (output != null) {
+            output.error(err);
+        }
+    }
+
+    /**
+     * Send {@code out} the events after {@code afterSeq} and forward the rest
+     * of the stream to it. Returns false, attaching nothing, when those events
+     * are no longer kept.
+     */
+    synchronized boolean attach(StreamOutput out, long afterSeq) {
+        long oldestKept = lastSeq - recent.size() + 1;
+        if (afterSeq > lastSeq || afterSeq < oldestKept - 1) {
+            return false;
+        }
+        if (output != null && output != out) {
+            output.detach();
+        }
+        if (afterSeq < lastSeq) {
+            List<String> missed = new ArrayList<>((int) (lastSeq - afterSeq));
+            Iterator<String> it = recent.descendingIterator();
+            for (long seq = lastSeq; seq > afterSeq; seq--) {
+                missed.add(it.next());
+            }
+            Collections.reverse(missed);
+            out.replay(afterSeq + 1, missed);
+        }
+        output = out;
+        if (completed) {
+            out.complete();
+        } else if (error != null) {
+            out.error(error);
+        }
+        return true;
+    }
+
+    /**
+     * Stop forwarding to {@code out} if it is still the attached output.
+     * Returns a token for {@link #isDetachedSince}, or -1 if {@code out} was
+     * not attached.
+     */
+    synchronized long detach(StreamOutput out) {
+        if (output != out) {
+            return -1;
+        }
+        output = null;
+        out.detach();
+        return ++detachments;
+    }
+
+    /** True if nothing attached since the detach that returned {@code token}. */
+    synchronized boolean isDetachedSince(long token) {
+        return output == null && detachments == token;
+    }
+
+    void dispose() {
+        upstream.dispose();
+    }
+}
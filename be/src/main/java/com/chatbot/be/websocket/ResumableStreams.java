@@ -0,0 +1,120 @@
+package com.chatbot.be.websocket;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Streams by resume token, kept for {@code chatbot.websocket.resume.grace-period}
+ * after their connection drops or after they end, so a client can resume
+ * instead of asking again. The token is random and only sent to the
+ * connection that started the stream, and resuming needs it together with the
+ * requestId: requestIds are chosen by clients, so they neither find nor
+ * replace another client's stream. A detached stream that nobody resumes in
+ * time is disposed, which cancels its upstream generation; a zero grace
+ * period disposes at once, as before resumption existed.
+ * <p>
+ * Gauge {@code chatbot.ws.resume.retained}; counter {@code chatbot.ws.resume}
+ * tagged {@code outcome=resumed|unavailable}.
+ */
+@Component
+public class ResumableStreams {
+
+    private final Map<String, ResumableStream> byToken = new ConcurrentHashMap<>();
+    private final int bufferSize;
+    private final Duration grace;
+    private final Scheduler timer = Schedulers.parallel();
+    private final Counter resumed;
+    private final Counter unavailable;
+
+    public ResumableStreams(WebSocketProperties properties, MeterRegistry meterRegistry) {
+        this.bufferSize = properties.getResume().getBufferSize();
+        this.grace = properties.getResume().getGracePeriod();
+        Gauge.builder("chatbot.ws.resume.retained", byToken, Map::size).register(meterRegistry);
+        this.resumed = Counter.builder("chatbot.ws.resume").tag("outcome", "resumed").register(meterRegistry);
+        this.unavailable = Counter.builder("chatbot.ws.resume").tag("outcome", "unavailable").register(meterRegistry);
+    }
+
+    /** False when the grace period is zero: streams end with their connection. */
+    boolean isEnabled() {
+        return !grace.isZero();
+    }
+
+    /** A new stream for {@code requestId}, under a fresh resume token. */
+    ResumableStream open(String requestId) {
+        ResumableStream stream = new ResumableStream(requestId, UUID.randomUUID().toString(),
+                grace.isZero() ? 0 : bufferSize);
+        byToken.put(stream.resumeToken(), stream);
+        return stream;
+    }
+
+    /** The stream kept under {@code resumeToken}, or null if there is none or it is not {@code requestId}. */
+    ResumableStream get(String requestId, String resumeToken) {
+        ResumableStream stream = byToken.get(resumeToken);
+        return stream != null && stream.requestId().equals(requestId) ? stream : null;
+    }
+
+    /** Attach {@code out} to {@code stream} after {@code afterSeq}; false if it is gone or too far behind. */
+    boolean resume(ResumableStream stream, StreamOutput out, long afterSeq) {
+        if (stream == null || !stream.attach(out, afterSeq)) {
+            unavailable.increment();
+            return false;
+        }
+        resumed.increment();
+        return true;
+    }
+
+    /** {@code out}'s connection is gone: keep the stream for the grace period. */
+    void detach(ResumableStream stream, StreamOutput out) {
+        long token = stream.detach(out);
+        if (token < 0) {
+            // already moved to another connection
+            return;
+        }
+        if (grace.isZero()) {
+            discard(stream);
+            return;
+        }
+        timer.schedule(() -> expire(stream, token), grace.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** The stream ended; keep it for the grace period so a client that missed the end can still get it. */
+    void ended(ResumableStream stream) {
+        if (grace.isZero()) {
+            byToken.remove(stream.resumeToken(), stream);
+            return;
+        }
+        timer.schedule(() -> byToken.remove(stream.resumeToken(), stream), grace.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Cancelled by the client on {@code out}'s connection: dispose now, unless it moved on. */
+    void cancel(ResumableStream stream, StreamOutput out) {
+        if (stream.detach(out) >= 0) {
+            discard(stream);
+        }
+    }
+
+    private void discard(ResumableStream stream) {
+        byToken.remove(stream.resumeToken(), stream);
+        stream.dispose();
+    }
+
+    private void expire(ResumableStream stream, long token) {
+        // resumed meanwhile: the new connection's detach schedules a fresh expiry
+        if (stream.isDetachedSince(token) && byToken.remove(stream.resumeToken(), stream)) {
+            stream.dispose();
+        }
+    }
+}
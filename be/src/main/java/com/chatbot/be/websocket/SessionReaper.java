@@ -0,0 +1,168 @@
+package com.chatbot.be.websocket;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Heartbeat and idle timeout for {@code /ws/chat} sessions, driven by one
+ * hashed timing wheel: each session has a single pending timeout, and
+ * scheduling or cancelling it is O(1) however many sessions are open.
+ * <p>
+ * Every ping interval a session is pinged. If nothing (pong or frame) came
+ * back since the previous ping, the socket is considered dead; if the client
+ * sent no frame for the idle timeout and has no stream running, it is idle.
+ * Either way the session is reaped off the wheel thread: its streams are
+ * released and it is closed. Counter {@code chatbot.ws.reaped} is tagged
+ * {@code reason=dead|idle}; gauge {@code chatbot.ws.sessions.tracked}. The
+ * reactive endpoint applies the same rules itself, see
+ * {@link ReactiveChatWebSocketHandler}.
+ */
+@Slf4j
+@Component
+public class SessionReaper {
+
+    static final CloseStatus IDLE = new CloseStatus(4000, "idle timeout");
+
+    private final Timer wheel;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+    private final Executor reapExecutor;
+    private final StreamRegistry streams;
+    private final AtomicInteger tracked = new AtomicInteger();
+    private final Counter dead;
+    private final Counter idle;
+
+    public SessionReaper(WebSocketProperties properties, StreamRegistry streams, Scheduler blockingScheduler,
+            MeterRegistry meterRegistry) {
+        WebSocketProperties.Heartbeat cfg = properties.getHeartbeat();
+        this.pingIntervalNanos = cfg.getPingInterval().toNanos();
+        this.idleTimeoutNanos = cfg.getIdleTimeout().toNanos();
+        this.streams = streams;
+        this.reapExecutor = task -> blockingScheduler.schedule(task);
+        ThreadFactory threads = r -> {
+            Thread t = new Thread(r, "ws-heartbeat-wheel");
+            t.setDaemon(true);
+            return t;
+        };
+        this.wheel = new HashedWheelTimer(threads, cfg.getTickDuration().toMillis(), TimeUnit.MILLISECONDS,
+                cfg.getTicksPerWheel());
+        Gauge.builder("chatbot.ws.sessions.tracked", tracked, AtomicInteger::get).register(meterRegistry);
+        this.dead = Counter.builder("chatbot.ws.reaped").tag("reason", "dead").register(meterRegistry);
+        this.idle = Counter.builder("chatbot.ws.reaped").tag("reason", "idle").register(meterRegistry);
+    }
+
+    /**
+     * Start watching a session; {@code reap} releases its streams and closes
+     * it with the given status. A zero ping interval disables the heartbeat.
+     */
+    Session track(BufferedSessionSender out, Consumer<CloseStatus> reap) {
+        Session session = new Session(out, reap);
+        if (pingIntervalNanos > 0) {
+            tracked.incrementAndGet();
+            session.schedule();
+        }
+        return session;
+    }
+
+    @PreDestroy
+    void stop() {
+        wheel.stop();
+    }
+
+    /** Liveness of one session. */
+    final class Session {
+        private final BufferedSessionSender out;
+        private final Consumer<CloseStatus> reap;
+        private volatile long lastFrame = System.nanoTime();
+        private volatile long lastSeen = lastFrame;
+        private long lastPing;
+        private volatile Timeout timeout;
+        private volatile boolean stopped;
+
+        private Session(BufferedSessionSender out, Consumer<CloseStatus> reap) {
+            this.out = out;
+            this.reap = reap;
+        }
+
+        /** A data frame from the client. */
+        void frame() {
+            long now = System.nanoTime();
+            lastFrame = now;
+            lastSeen = now;
+        }
+
+        /** A pong (or any sign of life that is not a request). */
+        void pong() {
+            lastSeen = System.nanoTime();
+        }
+
+        /** The session closed on its own. */
+        void stop() {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+            if (pingIntervalNanos > 0) {
+                tracked.decrementAndGet();
+            }
+        }
+
+        private void schedule() {
+            if (!stopped) {
+                timeout = wheel.newTimeout(t -> check(), pingIntervalNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        // runs on the wheel thread: decide and hand off, never block here
+        private void check() {
+            if (stopped || out.isClosed()) {
+                stop();
+                return;
+            }
+            long now = System.nanoTime();
+            if (lastPing != 0 && lastSeen - lastPing < 0) {
+                reap(dead, CloseStatus.SESSION_NOT_RELIABLE);
+                return;
+            }
+            if (idleTimeoutNanos > 0 && now - lastFrame >= idleTimeoutNanos
+                    && !streams.hasStreams(out.session().getId())) {
+                reap(idle, IDLE);
+                return;
+            }
+            lastPing = now;
+            // goes out ahead of queued data, so a slow reader is not taken for a dead one
+            out.send(new PingMessage());
+            schedule();
+        }
+
+        private void reap(Counter reason, CloseStatus status) {
+            reason.increment();
+            stop();
+            log.debug("Reaping session {}: {}", out.session().getId(), status);
+            reapExecutor.execute(() -> reap.accept(status));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.chatbot.be.websocket;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * Helpers for the JSON events carried in the Python service's SSE stream.
+ */
+final class SseEvents {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final JsonStringEncoder QUOTER = JsonStringEncoder.getInstance();
+
+    /** The parts of an event the binary protocol carries; both null for other events. */
+    record Parsed(String chunk, String error) {
+    }
+
+    private static final Parsed OTHER = new Parsed(null, null);
+
+    private SseEvents() {
+    }
+
+    /**
+     * Return {@code event} with its top-level {@code request_id} set to
+     * {@code requestId}. Events already carrying exactly that id (the
+     * subscriber that started the upstream call) are returned as is; for the
+     * others the new id is spliced in where the old value was, without
+     * building a tree or re-serializing the event.
+     */
+    static String withRequestId(String event, String requestId) {
+        int valueStart = -1;
+        int valueEnd = -1;
+        try (JsonParser p = JSON.createParser(event)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return event;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("request_id".equals(field) && value.isScalarValue()) {
+                    if (value == JsonToken.VALUE_STRING && requestId.equals(p.getText())) {
+                        return event;
+                    }
+                    valueStart = (int) p.currentTokenLocation().getCharOffset();
+                    p.finishToken();
+                    valueEnd = (int) p.currentLocation().getCharOffset();
+                    break;
+                }
+                p.skipChildren();
+            }
+        } catch (IOException e) {
+            // not JSON; forward unchanged
+            return event;
+        }
+        StringBuilder sb = new StringBuilder(event.length() + requestId.length() + 16);
+        if (valueStart < 0) {
+            // no request_id: add one as the first field
+            sb.append("{\"request_id\": \"").append(QUOTER.quoteAsString(requestId)).append('"');
+            int rest = 1;
+            while (rest < event.length() && Character.isWhitespace(event.charAt(rest))) {
+                rest++;
+            }
+            if (rest < event.length() && event.charAt(rest) != '}') {
+                sb.append(", ");
+            }
+            return sb.append(event, rest, event.length()).toString();
+        }
+        return sb.append(event, 0, valueStart)
+                .append('"').append(QUOTER.quoteAsString(requestId)).append('"')
+                .append(event, valueEnd, event.length())
+                .toString();
+    }
+
+    /** Return {@code event} with {@code "seq"} as its first field; anything but a JSON object is returned as is. */
+    static String withSeq(String event, long seq) {
+        if (event.isEmpty() || event.charAt(0) != '{') {
+            return event;
+        }
+        StringBuilder sb = new StringBuilder(event.length() + 24).append("{\"seq\": ").append(seq);
+        int rest = 1;
+        while (rest < event.length() && Character.isWhitespace(event.charAt(rest))) {
+            rest++;
+        }
+        if (rest < event.length() && event.charAt(rest) != '}') {
+            sb.append(", ");
+        }
+        return sb.append(event, rest, event.length()).toString();
+    }
+
+    /**
+     * {@link #withSeq(String, long)} for an undecoded event: the result is a
+     * short prefix joined with the event's own bytes, which are not copied.
+     */
+    static DataBuffer withSeq(DataBuffer event, long seq) {
+        int start = event.readPosition();
+        int end = event.writePosition();
+        if (start == end || event.getByte(start) != '{') {
+            return event;
+        }
+        int rest = start + 1;
+        while (rest < end && Character.isWhitespace(event.getByte(rest))) {
+            rest++;
+        }
+        String prefix = "{\"seq\": " + seq + (rest < end && event.getByte(rest) != '}' ? ", " : "");
+        event.readPosition(rest);
+        DataBufferFactory factory = event.factory();
+        return factory.join(List.of(factory.wrap(prefix.getBytes(StandardCharsets.US_ASCII)), event));
+    }
+
+    /** Pull {@code chunk} or {@code error} out of an event without building a tree. */
+    static Parsed parse(String event) {
+        try (JsonParser p = JSON.createParser(event)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return OTHER;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if (value == JsonToken.VALUE_STRING && "chunk".equals(field)) {
+                    return new Parsed(p.getText(), null);
+                }
+                if (value == JsonToken.VALUE_STRING && "error".equals(field)) {
+                    return new Parsed(null, p.getText());
+                }
+                p.skipChildren();
+            }
+        } catch (IOException e) {
+            // not JSON
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,221 @@
+package com.chatbot.be.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Splits a raw {@code text/event-stream} body into the {@code data} of each
+ * event without decoding it. Boundaries are found on the bytes and an
+ * event's data is handed on as slices of the upstream buffers, joined (a
+ * composite buffer on Netty) only when it spans several buffers or data
+ * lines. Events are only ever cut at line feeds, so a UTF-8 sequence split
+ * across two upstream chunks arrives whole.
+ * <p>
+ * Lines may end with LF or CR LF; fields other than {@code data} and
+ * comments are skipped. Every emitted buffer must be released by the
+ * consumer; anything still held when the stream ends or is cancelled is
+ * released here.
+ */
+final class SseFramer {
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte SPACE = ' ';
+    private static final byte COLON = ':';
+    private static final byte[] DATA = { 'd', 'a', 't', 'a' };
+
+    private enum State {
+        /** at the start of a line, matching the field name against {@code data} */
+        FIELD,
+        /** in the value of a data line */
+        VALUE,
+        /** in a comment or a field other than data, up to the end of the line */
+        SKIP
+    }
+
+    private final int maxEventBytes;
+    // data of the event being read, as slices of the upstream buffers
+    private final List<DataBuffer> pieces = new ArrayList<>();
+    private DataBufferFactory factory;
+    private State state = State.FIELD;
+    private int fieldLength;
+    private boolean valueStarted;
+    // the previous buffer ended with a CR inside a value; kept out until we know it is not CR LF
+    private boolean pendingCr;
+    private boolean hasData;
+    private int eventBytes;
+
+    SseFramer(int maxEventBytes) {
+        this.maxEventBytes = maxEventBytes;
+    }
+
+    /** The data of each event in {@code body}, a flux of upstream buffers that are released once read. */
+    static Flux<DataBuffer> frame(Flux<DataBuffer> body, int maxEventBytes) {
+        return Flux.defer(() -> {
+            SseFramer framer = new SseFramer(maxEventBytes);
+            return body.concatMapIterable(framer::feed)
+                    .concatWith(Mono.fromSupplier(framer::finish))
+                    .doFinally(signal -> framer.discard());
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /** Read one upstream buffer, releasing it, and return the events it completed. */
+    synchronized List<DataBuffer> feed(DataBuffer buffer) {
+        List<DataBuffer> events = List.of();
+        try {
+            if (factory == null) {
+                factory = buffer.factory();
+            }
+            int i = buffer.readPosition();
+            int end = buffer.writePosition();
+            int valueStart = i;
+            while (i < end) {
+                byte b = buffer.getByte(i);
+                switch (state) {
+                    case FIELD -> {
+                        if (b == LF) {
+                            if (fieldLength == DATA.length) {
+                                // "data" without a colon: a data line with an empty value
+                                startDataLine();
+                            } else if (fieldLength == 0) {
+                                DataBuffer event = dispatch();
+                                if (event != null) {
+                                    events = add(events, event);
+                                }
+                            }
+                            fieldLength = 0;
+                        } else if (b == CR && fieldLength == 0) {
+                            // CR of a CR LF blank line
+                        } else if (fieldLength < DATA.length && b == DATA[fieldLength]) {
+                            fieldLength++;
+                        } else if (fieldLength == DATA.length && b == COLON) {
+                            startDataLine();
+                            state = State.VALUE;
+                            valueStarted = false;
+                            valueStart = i + 1;
+                        } else {
+                            state = State.SKIP;
+                        }
+                    }
+                    case VALUE -> {
+                        if (!valueStarted) {
+                            valueStarted = true;
+                            if (b == SPACE) {
+                                // one space after the colon is not part of the value
+                                valueStart = i + 1;
+                                break;
+                            }
+                        }
+                        if (pendingCr) {
+                            pendingCr = false;
+                            if (b != LF) {
+                                addPiece(factory.wrap(new byte[] { CR }));
+                            }
+                        }
+                        if (b == LF) {
+                            int valueEnd = i > valueStart && buffer.getByte(i - 1) == CR ? i - 1 : i;
+                            int shift = take(buffer, valueStart, valueEnd);
+                            i -= shift;
+                            end -= shift;
+                            state = State.FIELD;
+                            fieldLength = 0;
+                        }
+                    }
+                    case SKIP -> {
+                        if (b == LF) {
+                            state = State.FIELD;
+                            fieldLength = 0;
+                        }
+                    }
+                }
+                i++;
+            }
+            if (state == State.VALUE && valueStarted) {
+                // the line goes on in the next buffer; keep what we have of it
+                if (end > valueStart && buffer.getByte(end - 1) == CR) {
+                    pendingCr = true;
+                    end--;
+                }
+                take(buffer, valueStart, end);
+            }
+            return events;
+        } catch (RuntimeException e) {
+            events.forEach(DataBufferUtils::release);
+            throw e;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    /** The last event if the body ended without a blank line after it; {@code null} otherwise. */
+    synchronized DataBuffer finish() {
+        if (pendingCr) {
+            pendingCr = false;
+        }
+        return dispatch();
+    }
+
+    /** Release an event left incomplete by an error or cancellation. */
+    synchronized void discard() {
+        pieces.forEach(DataBufferUtils::release);
+        pieces.clear();
+        hasData = false;
+    }
+
+    private void startDataLine() {
+        if (hasData) {
+            // several data lines make one value, joined by a line feed
+            addPiece(factory.wrap(new byte[] { LF }));
+        }
+        hasData = true;
+    }
+
+    /** Slice {@code [from, to)} off {@code buffer} into the event; returns how far the buffer's indexes moved. */
+    private int take(DataBuffer buffer, int from, int to) {
+        if (to <= from) {
+            return 0;
+        }
+        buffer.readPosition(from);
+        addPiece(buffer.split(to));
+        return to;
+    }
+
+    private void addPiece(DataBuffer piece) {
+        pieces.add(piece);
+        eventBytes += piece.readableByteCount();
+        if (eventBytes > maxEventBytes) {
+            throw new DataBufferLimitException("SSE event exceeds " + maxEventBytes + " bytes");
+        }
+    }
+
+    private DataBuffer dispatch() {
+        if (!hasData) {
+            return null;
+        }
+        DataBuffer event = switch (pieces.size()) {
+            case 0 -> factory.allocateBuffer(0);
+            case 1 -> pieces.get(0);
+            default -> factory.join(List.copyOf(pieces));
+        };
+        pieces.clear();
+        hasData = false;
+        eventBytes = 0;
+        return event;
+    }
+
+    private static List<DataBuffer> add(List<DataBuffer> events, DataBuffer event) {
+        if (events.isEmpty()) {
+            events = new ArrayList<>(4);
+        }
+        events.add(event);
+        return events;
+    }
+}
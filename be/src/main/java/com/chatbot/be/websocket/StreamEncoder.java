@@ -0,0 +1,35 @@
+package com.chatbot.be.websocket;
+
+import java.util.List;
+
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Turns the events of one stream into outbound frames for the session's
+ * {@link ChatProtocol}. {@code events} are the upstream SSE event payloads,
+ * numbered consecutively from {@code firstSeq}.
+ */
+interface StreamEncoder {
+
+    /** Frames for {@code events}, in order: one, unless the protocol sends an event per frame. */
+    List<WebSocketMessage<?>> tokens(long firstSeq, List<String> events);
+
+    /** The stream was started and can be resumed with {@code resumeToken}. */
+    WebSocketMessage<?> started(String resumeToken);
+
+    WebSocketMessage<?> done();
+
+    WebSocketMessage<?> cancelled();
+
+    /** Error with a fixed code such as {@code upstream_unavailable}. */
+    WebSocketMessage<?> error(String code);
+
+    /** {@code rate_limited} error: the stream was not started, try again after the given delay. */
+    WebSocketMessage<?> rateLimited(long retryAfterMillis);
+
+    /** The stream ran past its deadline and was stopped; distinct from an error or a client cancel. */
+    WebSocketMessage<?> deadlineExceeded();
+
+    /** Unexpected failure carrying free text. */
+    WebSocketMessage<?> failure(String message);
+}
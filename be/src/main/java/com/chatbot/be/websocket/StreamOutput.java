@@ -0,0 +1,87 @@
+package com.chatbot.be.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.web.socket.WebSocketMessage;
+
+import com.chatbot.be.upstream.DeadlineExceededException;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+
+/**
+ * Where the events of one stream go for one connection: token frames through
+ * the session's {@link TokenCoalescer}, closing frames straight to its
+ * sender. {@code onEnd} runs once the stream has ended for this connection.
+ */
+class StreamOutput {
+
+    private final BufferedSessionSender out;
+    private final StreamEncoder encoder;
+    private final TokenCoalescer frames;
+    private final int maxFrameChars;
+    private final Runnable onEnd;
+
+    StreamOutput(BufferedSessionSender out, StreamEncoder encoder, TokenCoalescer frames, int maxFrameChars,
+            Runnable onEnd) {
+        this.out = out;
+        this.encoder = encoder;
+        this.frames = frames;
+        this.maxFrameChars = maxFrameChars;
+        this.onEnd = onEnd;
+    }
+
+    void event(long seq, String event) {
+        frames.add(seq, event);
+    }
+
+    /** Events a resuming client missed, in frames of about the coalescing size. */
+    void replay(long firstSeq, List<String> events) {
+        frames.flush();
+        List<String> batch = new ArrayList<>();
+        int chars = 0;
+        long seq = firstSeq;
+        for (String event : events) {
+            batch.add(event);
+            chars += event.length();
+            if (chars >= maxFrameChars) {
+                send(encoder.tokens(seq, batch));
+                seq += batch.size();
+                batch.clear();
+                chars = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(encoder.tokens(seq, batch));
+        }
+    }
+
+    private void send(List<WebSocketMessage<?>> frames) {
+        for (WebSocketMessage<?> frame : frames) {
+            out.sendToken(frame);
+        }
+    }
+
+    void complete() {
+        frames.flush();
+        out.send(encoder.done());
+        onEnd.run();
+    }
+
+    void error(Throwable err) {
+        frames.flush();
+        if (err instanceof DeadlineExceededException) {
+            out.send(encoder.deadlineExceeded());
+        } else if (err instanceof CallNotPermittedException) {
+            out.send(encoder.error("upstream_unavailable"));
+        } else {
+            out.send(encoder.failure(err.getMessage()));
+        }
+        onEnd.run();
+    }
+
+    /** Stop forwarding: the connection went away or the stream was cancelled. */
+    void detach() {
+        frames.flush();
+    }
+}
@@ -0,0 +1,88 @@
+package com.chatbot.be.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+
+/**
+ * Live upstream streams, grouped by the WebSocket session that owns them.
+ * Entries are removed when a stream completes, fails or is cancelled, and
+ * every stream still running when its session closes is disposed (which, via
+ * the shared upstream, sends {@code /api/llm/cancel}).
+ * <p>
+ * Gauge {@code chatbot.ws.streams.live}; counter
+ * {@code chatbot.ws.streams.reaped} for streams disposed because their session
+ * went away.
+ */
+@Component
+public class StreamRegistry {
+
+    private final Map<String, Map<String, Disposable>> bySession = new ConcurrentHashMap<>();
+    private final AtomicInteger live = new AtomicInteger();
+    private final Counter reaped;
+
+    public StreamRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("chatbot.ws.streams.live", live, AtomicInteger::get).register(meterRegistry);
+        this.reaped = Counter.builder("chatbot.ws.streams.reaped").register(meterRegistry);
+    }
+
+    /** Track a stream; a previous stream with the same requestId in the session is disposed. */
+    public void register(String sessionId, String requestId, Disposable stream) {
+        Disposable previous = bySession.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
+                .put(requestId, stream);
+        if (previous == null) {
+            live.incrementAndGet();
+        } else {
+            previous.dispose();
+        }
+    }
+
+    /** Forget a stream that finished on its own. */
+    public void remove(String sessionId, String requestId, Disposable stream) {
+        Map<String, Disposable> streams = bySession.get(sessionId);
+        if (streams != null && streams.remove(requestId, stream)) {
+            live.decrementAndGet();
+        }
+    }
+
+    /** Stop tracking one stream of the session without disposing it; null if it was not running. */
+    public Disposable release(String sessionId, String requestId) {
+        Map<String, Disposable> streams = bySession.get(sessionId);
+        Disposable d = streams == null ? null : streams.remove(requestId);
+        if (d != null) {
+            live.decrementAndGet();
+        }
+        return d;
+    }
+
+    /** Dispose every stream the session still owns. */
+    public void closeSession(String sessionId) {
+        Map<String, Disposable> streams = bySession.remove(sessionId);
+        if (streams == null) {
+            return;
+        }
+        streams.forEach((requestId, d) -> {
+            if (streams.remove(requestId, d)) {
+                live.decrementAndGet();
+                reaped.increment();
+                d.dispose();
+            }
+        });
+    }
+
+    public boolean hasStreams(String sessionId) {
+        Map<String, Disposable> streams = bySession.get(sessionId);
+        return streams != null && !streams.isEmpty();
+    }
+
+    public int liveStreams() {
+        return live.get();
+    }
+}
@@ -0,0 +1,113 @@
+package com.chatbot.be.websocket;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import com.chatbot.be.model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Collects the answer of one streamed request so it can be stored with a
+ * single write once the stream ends. Each SSE event from the Python service
+ * looks like {@code {"request_id": "...", "chunk": "word"}}; only the
+ * {@code chunk} text is kept, appended to a pooled buffer. Python ends a
+ * stream it cut short with an {@code error} or {@code cancelled} event and
+ * then completes it normally; such an answer is {@link #isCut() cut}.
+ */
+class StreamTranscript {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final AnswerBufferPool pool;
+    private final String question;
+    private final long conversationId;
+    private StringBuilder answer;
+    private boolean cut;
+
+    StreamTranscript(AnswerBufferPool pool, String question, long conversationId) {
+        this.pool = pool;
+        this.question = question;
+        this.conversationId = conversationId;
+        this.answer = pool.acquire();
+    }
+
+    synchronized void append(String event) {
+        if (answer == null) {
+            return;
+        }
+        try (JsonParser p = JSON.createParser(event)) {
+            append(p);
+        } catch (IOException e) {
+            // not a JSON event (e.g. raw text); nothing to record
+        }
+    }
+
+    /** Same for an undecoded event; its read position is left where it was. */
+    synchronized void append(DataBuffer event) {
+        if (answer == null) {
+            return;
+        }
+        int readPosition = event.readPosition();
+        try (JsonParser p = JSON.createParser(event.asInputStream())) {
+            append(p);
+        } catch (IOException e) {
+            // not a JSON event; nothing to record
+        } finally {
+            event.readPosition(readPosition);
+        }
+    }
+
+    private void append(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            return;
+        }
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("chunk".equals(field) && value == JsonToken.VALUE_STRING) {
+                if (answer.length() > 0) {
+                    answer.append(' ');
+                }
+                answer.append(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+                return;
+            }
+            if ("error".equals(field) || "cancelled".equals(field) && value == JsonToken.VALUE_TRUE) {
+                cut = true;
+                return;
+            }
+            p.skipChildren();
+        }
+    }
+
+    /** Whether python reported the answer as cut short (an error, a cancel or its deadline). */
+    synchronized boolean isCut() {
+        return cut;
+    }
+
+    synchronized boolean isEmpty() {
+        return answer == null || answer.length() == 0;
+    }
+
+    /**
+     * Build the message to persist and hand the buffer back to the pool.
+     * Returns {@code null} if the transcript was already finished.
+     */
+    synchronized Message finish(boolean partial) {
+        if (answer == null) {
+            return null;
+        }
+        Message m = new Message();
+        m.setQuestion(question);
+        m.setAnswer(answer.toString());
+        m.setPartial(partial);
+        m.setTimestamp(LocalDateTime.now());
+        m.setConversationId(conversationId);
+        pool.release(answer);
+        answer = null;
+        return m;
+    }
+}
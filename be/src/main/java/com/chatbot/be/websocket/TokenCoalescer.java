@@ -0,0 +1,81 @@
+package com.chatbot.be.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.web.socket.WebSocketMessage;
+
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Merges consecutive chunk events of one stream into fewer WebSocket frames.
+ * The first chunk is sent at once (time to first token is what users feel);
+ * later chunks are held for at most {@code window} or until
+ * {@code maxChars} are pending, then encoded as one frame by the stream's
+ * {@link StreamEncoder}. {@link #flush()} sends whatever is pending and
+ * must be called before the stream's closing frame. Only used with a window
+ * for protocols that allow several events per frame
+ * ({@link ChatProtocol#coalesces()}).
+ */
+class TokenCoalescer {
+
+    private final BufferedSessionSender out;
+    private final StreamEncoder encoder;
+    private final Scheduler timer;
+    private final long windowNanos;
+    private final int maxChars;
+
+    private final List<String> pending = new ArrayList<>();
+    private long pendingFirstSeq;
+    private int pendingChars;
+    private boolean firstSent;
+    private Disposable scheduledFlush;
+
+    TokenCoalescer(BufferedSessionSender out, StreamEncoder encoder, Scheduler timer, long windowNanos,
+            int maxChars) {
+        this.out = out;
+        this.encoder = encoder;
+        this.timer = timer;
+        this.windowNanos = windowNanos;
+        this.maxChars = maxChars;
+    }
+
+    synchronized void add(long seq, String event) {
+        if (!firstSent || windowNanos <= 0) {
+            firstSent = true;
+            send(encoder.tokens(seq, List.of(event)));
+            return;
+        }
+        if (pending.isEmpty()) {
+            pendingFirstSeq = seq;
+        }
+        pending.add(event);
+        pendingChars += event.length();
+        if (pendingChars >= maxChars) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = timer.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.dispose();
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        send(encoder.tokens(pendingFirstSeq, pending));
+        pending.clear();
+        pendingChars = 0;
+    }
+
+    private void send(List<WebSocketMessage<?>> frames) {
+        for (WebSocketMessage<?> frame : frames) {
+            out.sendToken(frame);
+        }
+    }
+}
@@ -4,19 +4,27 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import com.chatbot.be.config.WebSocketProperties;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final ChatWebSocketHandler chatWebSocketHandler;
+    private final WebSocketProperties webSocketProperties;
 
-    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler) {
+    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler, WebSocketProperties webSocketProperties) {
         this.chatWebSocketHandler = chatWebSocketHandler;
+        this.webSocketProperties = webSocketProperties;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(chatWebSocketHandler, "/ws/chat").setAllowedOriginPatterns("*");
+        registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .setHandshakeHandler(new DefaultHandshakeHandler(
+                        new DeflateUpgradeStrategy(webSocketProperties.getCompression())))
+                .setAllowedOriginPatterns("*");
     }
 }
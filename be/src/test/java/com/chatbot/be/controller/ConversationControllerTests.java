@@ -0,0 +1,53 @@
+package com.chatbot.be.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.chatbot.be.model.Message;
+import com.chatbot.be.service.MessageHistoryService;
+
+import reactor.core.publisher.Flux;
+
+class ConversationControllerTests {
+
+    private static Message message(long id, String answer) {
+        Message m = new Message();
+        m.setId(id);
+        m.setAnswer(answer);
+        m.setConversationId(1);
+        return m;
+    }
+
+    @Test
+    void streamsAPageAsOneJsonObjectPerLine() throws Exception {
+        MessageHistoryService history = mock(MessageHistoryService.class);
+        when(history.messagesAfter(1, 2, 2)).thenReturn(Flux.just(message(3, "a"), message(4, "b")));
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new ConversationController(history)).build();
+
+        MvcResult result = mvc.perform(get("/api/v1/conversations/1/messages?after=2&limit=2")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).startsWith("{\"id\":3,").contains("\"answer\":\"a\"");
+        assertThat(lines[1]).startsWith("{\"id\":4,");
+    }
+}
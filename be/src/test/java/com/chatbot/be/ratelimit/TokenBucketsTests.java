@@ -0,0 +1,57 @@
+package com.chatbot.be.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketsTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final TokenBuckets buckets = new TokenBuckets(3, Duration.ofSeconds(2));
+    // starts near the wrap-around point of System.nanoTime values
+    private long now = Long.MAX_VALUE - 5 * SECOND;
+
+    @Test
+    void allowsBurstThenRefillsLazily() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(buckets.tryAcquire("u", now)).isZero();
+        }
+        assertThat(buckets.tryAcquire("u", now)).isEqualTo(2 * SECOND);
+        assertThat(buckets.tryAcquire("other", now)).isZero();
+
+        now += SECOND + SECOND / 2;
+        assertThat(buckets.tryAcquire("u", now)).isEqualTo(SECOND / 2);
+        now += SECOND / 2;
+        assertThat(buckets.tryAcquire("u", now)).isZero();
+        assertThat(buckets.tryAcquire("u", now)).isEqualTo(2 * SECOND);
+
+        // a long pause never earns more than the capacity
+        now += 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertThat(buckets.tryAcquire("u", now)).isZero();
+        }
+        assertThat(buckets.tryAcquire("u", now)).isPositive();
+    }
+
+    @Test
+    void refundsAndEvictsFullBuckets() {
+        for (int i = 0; i < 3; i++) {
+            buckets.tryAcquire("u", now);
+        }
+        buckets.refund("u");
+        assertThat(buckets.tryAcquire("u", now)).isZero();
+        buckets.tryAcquire("idle", now);
+
+        // "u" is full again 6s from now, "idle" 2s from now
+        now += 3 * SECOND;
+        buckets.evictIdle(now, SECOND);
+        assertThat(buckets.size()).isEqualTo(1);
+        now += 4 * SECOND;
+        buckets.evictIdle(now, SECOND);
+        assertThat(buckets.size()).isZero();
+    }
+}
@@ -0,0 +1,120 @@
+package com.chatbot.be.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+
+import com.chatbot.be.mapper.MessageMapper;
+import com.chatbot.be.model.Message;
+
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+class MessageHistoryServiceTests {
+
+    private final MessageMapper mapper = mock(MessageMapper.class);
+    private final SqlSession session = mock(SqlSession.class);
+    private final MessageHistoryService history;
+
+    MessageHistoryServiceTests() {
+        SqlSessionFactory factory = mock(SqlSessionFactory.class);
+        when(factory.openSession()).thenReturn(session);
+        when(session.getMapper(MessageMapper.class)).thenReturn(mapper);
+        history = new MessageHistoryService(factory, Schedulers.immediate());
+    }
+
+    /** Conversation 1 holds messages 1..{@code count}; the mapper pages them like the SQL does. */
+    private void conversation(long count) {
+        when(mapper.selectMessagesAfter(eq(1L), anyLong(), anyInt())).thenAnswer(inv -> {
+            long after = inv.getArgument(1);
+            int limit = inv.getArgument(2);
+            return cursor(LongStream.rangeClosed(after + 1, count).limit(limit).mapToObj(id -> {
+                Message m = new Message();
+                m.setId(id);
+                m.setConversationId(1);
+                return m;
+            }).iterator());
+        });
+    }
+
+    private List<Long> page(long after, int limit) {
+        return history.messagesAfter(1, after, limit).map(Message::getId).collectList().block();
+    }
+
+    @Test
+    void pagesFollowTheLastSeenId() {
+        conversation(5);
+        assertThat(page(0, 2)).containsExactly(1L, 2L);
+        assertThat(page(2, 2)).containsExactly(3L, 4L);
+        assertThat(page(4, 2)).containsExactly(5L);
+        assertThat(page(5, 2)).isEmpty();
+        // a negative cursor reads from the start
+        assertThat(page(-1, 2)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void capsTheLimitAndDefaultsAMissingOne() {
+        conversation(1000);
+        assertThat(page(0, 10_000)).hasSize(MessageHistoryService.MAX_LIMIT);
+        assertThat(page(0, 0)).hasSize(MessageHistoryService.DEFAULT_LIMIT);
+        verify(mapper).selectMessagesAfter(1, 0, MessageHistoryService.MAX_LIMIT);
+    }
+
+    @Test
+    void closesTheSessionWhenTheSubscriberCancels() {
+        conversation(Long.MAX_VALUE - 1);
+        StepVerifier.create(history.messagesAfter(1, 0, MessageHistoryService.MAX_LIMIT), 2)
+                .expectNextCount(2)
+                .thenCancel()
+                .verify();
+        verify(session).close();
+    }
+
+    @Test
+    void closesTheSessionOnceThePageIsRead() {
+        conversation(3);
+        assertThat(page(0, 10)).hasSize(3);
+        verify(session).close();
+    }
+
+    private static Cursor<Message> cursor(Iterator<Message> rows) {
+        return new Cursor<>() {
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public boolean isConsumed() {
+                return !rows.hasNext();
+            }
+
+            @Override
+            public int getCurrentIndex() {
+                return -1;
+            }
+
+            @Override
+            public Iterator<Message> iterator() {
+                return rows;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
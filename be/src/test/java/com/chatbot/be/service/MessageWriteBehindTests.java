@@ -0,0 +1,107 @@
+package com.chatbot.be.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.chatbot.be.config.WriteBehindProperties;
+import com.chatbot.be.mapper.MessageMapper;
+import com.chatbot.be.model.Message;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.scheduler.Schedulers;
+
+class MessageWriteBehindTests {
+
+    @Test
+    void flushesPendingMessagesInMultiRowStatementsOnShutdown() throws Exception {
+        List<Integer> statementSizes = Collections.synchronizedList(new ArrayList<>());
+        MessageMapper mapper = mock(MessageMapper.class);
+        doAnswer(inv -> {
+            statementSizes.add(((List<?>) inv.getArgument(0)).size());
+            return null;
+        }).when(mapper).insertMessages(any());
+        SqlSession session = mock(SqlSession.class);
+        when(session.getMapper(MessageMapper.class)).thenReturn(mapper);
+        SqlSessionFactory factory = mock(SqlSessionFactory.class);
+        when(factory.openSession(any(ExecutorType.class), anyBoolean())).thenReturn(session);
+
+        WriteBehindProperties props = new WriteBehindProperties();
+        props.setBatchSize(10);
+        props.setRowsPerStatement(4);
+        props.setFlushInterval(Duration.ofSeconds(5));
+
+        MessageWriteBehind writeBehind = new MessageWriteBehind(factory, props, Schedulers.boundedElastic(),
+                new SimpleMeterRegistry());
+        writeBehind.start();
+        for (int i = 0; i < 10; i++) {
+            writeBehind.enqueue(new Message()).block();
+        }
+        writeBehind.stop();
+
+        assertThat(writeBehind.pending()).isZero();
+        assertThat(statementSizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(10);
+        assertThat(statementSizes).allMatch(n -> n <= 4);
+        verify(session, atLeastOnce()).commit();
+    }
+
+    @Test
+    void retriesFailedBatchesAndDeadLettersOnlyTheMessagesThatStillFail(@TempDir Path dir) throws Exception {
+        List<Integer> attempts = Collections.synchronizedList(new ArrayList<>());
+        MessageMapper mapper = mock(MessageMapper.class);
+        doAnswer(inv -> {
+            List<?> rows = inv.getArgument(0);
+            attempts.add(rows.size());
+            // the batch fails while it holds the bad row, and so does the bad row alone
+            if (rows.stream().anyMatch(m -> "bad".equals(((Message) m).getQuestion()))) {
+                throw new IllegalStateException("Data too long for column 'question'");
+            }
+            return null;
+        }).when(mapper).insertMessages(any());
+        SqlSession session = mock(SqlSession.class);
+        when(session.getMapper(MessageMapper.class)).thenReturn(mapper);
+        SqlSessionFactory factory = mock(SqlSessionFactory.class);
+        when(factory.openSession(any(ExecutorType.class), anyBoolean())).thenReturn(session);
+
+        WriteBehindProperties props = new WriteBehindProperties();
+        props.setBatchSize(3);
+        props.setFlushInterval(Duration.ofSeconds(5));
+        props.setRetryBackoff(Duration.ofMillis(1));
+        props.setDeadLetterFile(dir.resolve("dead.jsonl"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        MessageWriteBehind writeBehind = new MessageWriteBehind(factory, props, Schedulers.boundedElastic(), registry);
+        writeBehind.start();
+        for (String q : List.of("a", "bad", "b")) {
+            Message m = new Message();
+            m.setQuestion(q);
+            writeBehind.enqueue(m).block();
+        }
+        writeBehind.stop();
+
+        // three attempts at the batch, then each row on its own
+        assertThat(attempts).containsExactly(3, 3, 3, 1, 1, 1);
+        assertThat(registry.counter("chatbot.persistence.write-behind.retries").count()).isEqualTo(2);
+        assertThat(registry.counter("chatbot.persistence.write-behind.failed").count()).isEqualTo(1);
+        assertThat(Files.readAllLines(props.getDeadLetterFile())).singleElement()
+                .satisfies(line -> assertThat(line).contains("\"question\":\"bad\""));
+    }
+}
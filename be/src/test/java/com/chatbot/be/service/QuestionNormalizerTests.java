@@ -0,0 +1,22 @@
+package com.chatbot.be.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class QuestionNormalizerTests {
+
+    @Test
+    void foldsCaseWhitespaceAndVietnameseDiacritics() {
+        assertThat(QuestionNormalizer.normalize("  Học phí   ĐẠI HỌC\tbao nhiêu? "))
+                .isEqualTo("hoc phi dai hoc bao nhieu?");
+        assertThat(QuestionNormalizer.normalize("hoc phi dai hoc bao nhieu?"))
+                .isEqualTo(QuestionNormalizer.normalize("Học  phí đại học bao nhiêu?"));
+    }
+
+    @Test
+    void nullAndBlankBecomeEmpty() {
+        assertThat(QuestionNormalizer.normalize(null)).isEmpty();
+        assertThat(QuestionNormalizer.normalize(" \n ")).isEmpty();
+    }
+}
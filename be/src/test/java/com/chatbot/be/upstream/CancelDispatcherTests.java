@@ -0,0 +1,107 @@
+package com.chatbot.be.upstream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.chatbot.be.config.UpstreamProperties;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+class CancelDispatcherTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private DisposableServer server;
+
+    /** A worker that records cancel bodies; {@code legacy} ones only take a single request_id. */
+    private UpstreamEndpoint worker(boolean legacy, AtomicInteger failFirst) {
+        server = HttpServer.create().host("127.0.0.1").port(0)
+                .route(routes -> routes.post("/api/llm/cancel", (req, res) -> req.receive().aggregate()
+                        .asString(StandardCharsets.UTF_8)
+                        .flatMap(body -> {
+                            bodies.add(body);
+                            if (failFirst.getAndDecrement() > 0) {
+                                return res.status(503).send().then();
+                            }
+                            if (legacy && body.contains("request_ids")) {
+                                return res.status(400).send().then();
+                            }
+                            return res.sendString(Mono.just("{}")).then();
+                        })))
+                .bindNow();
+        String url = "http://127.0.0.1:" + server.port();
+        return new UpstreamEndpoint(url, WebClient.create(url), CircuitBreaker.ofDefaults(url));
+    }
+
+    private CancelDispatcher dispatcher(UpstreamEndpoint endpoint) {
+        UpstreamProperties.Cancel cfg = new UpstreamProperties.Cancel();
+        cfg.setWindow(Duration.ofMillis(50));
+        cfg.setRetryBackoff(Duration.ofMillis(10));
+        return new CancelDispatcher(List.of(endpoint), cfg, Schedulers.parallel(), registry);
+    }
+
+    private double count(String name, String... tags) {
+        return registry.counter(name, tags).count();
+    }
+
+    private void awaitAcked(int ids) throws InterruptedException {
+        for (int i = 0; i < 200 && registry.timer("chatbot.upstream.cancel.latency").count() < ids; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(registry.timer("chatbot.upstream.cancel.latency").count()).isEqualTo(ids);
+    }
+
+    @AfterEach
+    void stop() {
+        server.disposeNow();
+    }
+
+    @Test
+    void coalescesCancelsWithinTheWindowIntoOneCall() throws InterruptedException {
+        UpstreamEndpoint endpoint = worker(false, new AtomicInteger());
+        CancelDispatcher cancels = dispatcher(endpoint);
+        cancels.cancel(endpoint, "r-1");
+        cancels.cancel(endpoint, "r-2");
+        cancels.cancel(endpoint, "r-1");
+        cancels.cancel(endpoint, "r-3");
+        awaitAcked(3);
+        assertThat(bodies).containsExactly("{\"request_ids\":[\"r-1\",\"r-2\",\"r-3\"]}");
+        assertThat(count("chatbot.upstream.cancel.coalesced")).isEqualTo(1);
+    }
+
+    @Test
+    void fallsBackToOneCallPerIdAndRetriesFailures() throws InterruptedException {
+        UpstreamEndpoint endpoint = worker(true, new AtomicInteger(1));
+        CancelDispatcher cancels = dispatcher(endpoint);
+        cancels.cancel(endpoint, "r-1");
+        cancels.cancel(endpoint, "r-2");
+        awaitAcked(2);
+        // the batch fails with a 503, is retried and turned down, then one call per id
+        assertThat(bodies).hasSize(4);
+        assertThat(bodies.subList(2, 4)).containsExactlyInAnyOrder("{\"request_id\":\"r-1\"}",
+                "{\"request_id\":\"r-2\"}");
+        assertThat(count("chatbot.upstream.cancel.retries")).isEqualTo(1);
+
+        cancels.cancel(endpoint, "r-3");
+        cancels.cancel(endpoint, "r-4");
+        awaitAcked(4);
+        // the worker is not offered a batch again
+        assertThat(bodies).hasSize(6);
+        assertThat(bodies.subList(4, 6)).noneMatch(b -> b.contains("request_ids"));
+        assertThat(count("chatbot.upstream.cancel.failed")).isZero();
+    }
+}
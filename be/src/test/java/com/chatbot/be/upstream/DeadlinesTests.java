@@ -0,0 +1,57 @@
+package com.chatbot.be.upstream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.chatbot.be.config.UpstreamProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class DeadlinesTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private Deadlines deadlines(Duration defaultTimeout, Duration maxTimeout) {
+        UpstreamProperties props = new UpstreamProperties();
+        props.getDeadline().setDefaultTimeout(defaultTimeout);
+        props.getDeadline().setMaxTimeout(maxTimeout);
+        return new Deadlines(props, registry);
+    }
+
+    @Test
+    void clientTimeoutsFallBackToTheDefaultAndAreCapped() {
+        Deadlines d = deadlines(Duration.ofSeconds(30), Duration.ofSeconds(60));
+        assertThat(d.start(0).remainingMillis()).isBetween(29_000L, 30_000L);
+        assertThat(d.start("not a number").remainingMillis()).isBetween(29_000L, 30_000L);
+        assertThat(d.start("5000").remainingMillis()).isBetween(4_000L, 5_000L);
+        assertThat(d.start(3_600_000).remainingMillis()).isBetween(59_000L, 60_000L);
+
+        assertThat(deadlines(Duration.ZERO, Duration.ZERO).start(null)).isSameAs(Deadline.NONE);
+        assertThat(deadlines(Duration.ZERO, Duration.ofSeconds(60)).start(null).isBounded()).isTrue();
+    }
+
+    @Test
+    void expiryCancelsTheCallAndFailsTheSubscriber() {
+        Deadline deadline = deadlines(Duration.ofSeconds(5), Duration.ZERO).start(0);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        StepVerifier.withVirtualTime(() -> deadline.bound(Flux.interval(Duration.ofSeconds(1)).take(10)
+                        .doOnCancel(() -> cancelled.set(true))))
+                .thenAwait(Duration.ofSeconds(10))
+                .expectNextCount(4)
+                .expectError(DeadlineExceededException.class)
+                .verify();
+        assertThat(cancelled).isTrue();
+        assertThat(registry.counter("chatbot.upstream.deadline.exceeded").count()).isEqualTo(1);
+
+        StepVerifier.withVirtualTime(() -> deadline.bound(Flux.interval(Duration.ofSeconds(1)).take(2)))
+                .thenAwait(Duration.ofSeconds(2))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,52 @@
+package com.chatbot.be.upstream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.chatbot.be.config.UpstreamProperties;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class UpstreamBalancerTests {
+
+    private final UpstreamBalancer balancer;
+    private final CircuitBreaker breaker;
+
+    UpstreamBalancerTests() {
+        UpstreamProperties props = new UpstreamProperties();
+        props.setEndpoints(List.of("http://127.0.0.1:9"));
+        props.getBreaker().setSlowCallDurationThreshold(Duration.ofMillis(50));
+        balancer = new UpstreamBalancer(WebClient.builder(), props, new SimpleMeterRegistry());
+        breaker = balancer.endpoints().get(0).circuitBreaker();
+    }
+
+    @Test
+    void streamAbandonedAfterTheSlowThresholdCountsAsSlow() throws InterruptedException {
+        Disposable quick = balancer.stream("r-1", client -> Flux.never()).subscribe();
+        quick.dispose();
+        assertThat(breaker.getMetrics().getNumberOfBufferedCalls()).isZero();
+
+        Disposable stalled = balancer.stream("r-2", client -> Flux.never()).subscribe();
+        Thread.sleep(80);
+        stalled.dispose();
+        assertThat(breaker.getMetrics().getNumberOfSlowCalls()).isEqualTo(1);
+        assertThat(balancer.endpoints().get(0).outstanding()).isZero();
+    }
+
+    @Test
+    void callAbandonedAfterTheSlowThresholdCountsAsSlow() throws InterruptedException {
+        Disposable stalled = balancer.mono(client -> Mono.never()).subscribe();
+        Thread.sleep(80);
+        stalled.dispose();
+        assertThat(breaker.getMetrics().getNumberOfSlowCalls()).isEqualTo(1);
+    }
+}
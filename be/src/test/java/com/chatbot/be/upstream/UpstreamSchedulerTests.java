@@ -0,0 +1,96 @@
+package com.chatbot.be.upstream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import com.chatbot.be.config.UpstreamProperties;
+import com.chatbot.be.upstream.UpstreamScheduler.Priority;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+class UpstreamSchedulerTests {
+
+    private final List<String> started = new ArrayList<>();
+    private final Map<String, Sinks.Empty<Void>> calls = new HashMap<>();
+
+    private static UpstreamScheduler scheduler(Map<String, Integer> weights) {
+        UpstreamProperties props = new UpstreamProperties();
+        props.getScheduler().setMaxConcurrent(1);
+        props.getScheduler().setWeights(weights);
+        return new UpstreamScheduler(props, new SimpleMeterRegistry());
+    }
+
+    /** Submit a call named {@code name} that runs until {@link #end} is called for it. */
+    private Disposable submit(UpstreamScheduler scheduler, String user, Priority priority, String name) {
+        return scheduler.stream(user, priority, () -> Flux.defer(() -> {
+            started.add(name);
+            Sinks.Empty<Void> call = Sinks.empty();
+            calls.put(name, call);
+            return call.asMono();
+        })).subscribe();
+    }
+
+    private void end(String name) {
+        calls.get(name).tryEmitEmpty();
+    }
+
+    @Test
+    void sharesWorkersFairlyAcrossUsersByWeight() {
+        UpstreamScheduler scheduler = scheduler(Map.of("gold", 4));
+        submit(scheduler, "heavy", Priority.INTERACTIVE, "h1");
+        for (int i = 2; i <= 4; i++) {
+            submit(scheduler, "heavy", Priority.INTERACTIVE, "h" + i);
+        }
+        submit(scheduler, "light", Priority.INTERACTIVE, "l1");
+        submit(scheduler, "gold", Priority.INTERACTIVE, "g1");
+        submit(scheduler, "gold", Priority.INTERACTIVE, "g2");
+        assertThat(started).containsExactly("h1");
+
+        for (String name : List.of("h1", "g1", "g2", "l1", "h2", "h3")) {
+            end(name);
+        }
+        // the late users are not stuck behind heavy's backlog; gold's calls cost a quarter
+        assertThat(started).containsExactly("h1", "g1", "g2", "l1", "h2", "h3", "h4");
+    }
+
+    @Test
+    void interactiveGoesFirstAndCancelledCallsNeverStart() {
+        UpstreamScheduler scheduler = scheduler(Map.of());
+        submit(scheduler, "a", Priority.STANDARD, "running");
+        submit(scheduler, "a", Priority.STANDARD, "rest");
+        Disposable cancelled = submit(scheduler, "b", Priority.INTERACTIVE, "cancelled");
+        submit(scheduler, "b", Priority.INTERACTIVE, "stream");
+        cancelled.dispose();
+
+        end("running");
+        end("stream");
+        assertThat(started).containsExactly("running", "stream", "rest");
+    }
+
+    @Test
+    void aCallCancelledBeforeItIsQueuedDoesNotHoldASlot() {
+        UpstreamScheduler scheduler = scheduler(Map.of());
+        scheduler.stream("a", Priority.STANDARD, () -> Flux.defer(() -> {
+            started.add("gone");
+            return Flux.empty();
+        })).subscribe(new BaseSubscriber<Object>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                cancel();
+            }
+        });
+        submit(scheduler, "a", Priority.STANDARD, "next");
+        assertThat(started).containsExactly("next");
+    }
+}
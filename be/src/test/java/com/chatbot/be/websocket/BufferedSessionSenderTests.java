@@ -0,0 +1,165 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+
+class BufferedSessionSenderTests {
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    // tasks handed to the executor, run when the test says so
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private static WebSocketProperties.Outbound outbound(int bufferBytes, OverflowPolicy policy) {
+        WebSocketProperties.Outbound cfg = new WebSocketProperties.Outbound();
+        cfg.setBufferSizeLimit(DataSize.ofBytes(bufferBytes));
+        cfg.setOverflowPolicy(policy);
+        return cfg;
+    }
+
+    private WebSocketSession recordingSession() throws IOException {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        doAnswer(inv -> sent.add(inv.getArgument(0) instanceof TextMessage text ? text.getPayload() : "ping"))
+                .when(session).sendMessage(any(WebSocketMessage.class));
+        return session;
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    @Test
+    void writesFramesInTheOrderTheyWereSent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        BufferedSessionSender out = new BufferedSessionSender(recordingSession(), executor,
+                outbound(1024 * 1024, OverflowPolicy.CLOSE));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            expected.add("t" + i);
+            out.send("t" + i);
+        }
+        for (int i = 0; i < 200 && sent.size() < expected.size(); i++) {
+            Thread.sleep(10);
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(sent).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void dropPolicyKeepsTheNewestFramesThatFit() throws Exception {
+        WebSocketSession session = recordingSession();
+        BufferedSessionSender out = new BufferedSessionSender(session, tasks::add, outbound(10, OverflowPolicy.DROP));
+        for (String frame : List.of("aaaa", "bbbb", "cccc", "dddd")) {
+            out.sendToken(new TextMessage(frame));
+        }
+        assertThat(out.bufferSize()).isEqualTo(8);
+        runTasks();
+        assertThat(sent).containsExactly("cccc", "dddd");
+        assertThat(out.isClosed()).isFalse();
+    }
+
+    @Test
+    void dropPolicyKeepsTheStartedAndClosingFrames() throws Exception {
+        BufferedSessionSender out = new BufferedSessionSender(recordingSession(), tasks::add,
+                outbound(16, OverflowPolicy.DROP));
+        out.send("started");
+        for (String frame : List.of("aaaa", "bbbb", "cccc")) {
+            out.sendToken(new TextMessage(frame));
+        }
+        out.send("done");
+        runTasks();
+        assertThat(sent).containsExactly("started", "cccc", "done");
+        assertThat(out.isClosed()).isFalse();
+    }
+
+    @Test
+    void pingsGoAheadOfQueuedFrames() throws Exception {
+        BufferedSessionSender out = new BufferedSessionSender(recordingSession(), tasks::add,
+                outbound(1024, OverflowPolicy.DROP));
+        out.send("a");
+        out.send("b");
+        out.send(new PingMessage());
+        runTasks();
+        assertThat(sent).containsExactly("ping", "a", "b");
+    }
+
+    @Test
+    void closePolicyClosesTheSessionAndStopsSending() throws Exception {
+        WebSocketSession session = recordingSession();
+        BufferedSessionSender out = new BufferedSessionSender(session, tasks::add, outbound(10, OverflowPolicy.CLOSE));
+        out.send("aaaa");
+        out.send("bbbb");
+        out.send("cccc");
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        out.send("dddd");
+        runTasks();
+        assertThat(sent).isEmpty();
+        assertThat(out.bufferSize()).isZero();
+    }
+
+    @Test
+    void standardSessionWritesOneFrameAtATimeWithoutBlocking() throws Exception {
+        List<SendHandler> pending = new ArrayList<>();
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        doAnswer(inv -> {
+            sent.add(inv.getArgument(0));
+            return pending.add(inv.getArgument(1));
+        }).when(remote).sendText(any(String.class), any(SendHandler.class));
+        Session nativeSession = mock(Session.class);
+        when(nativeSession.getAsyncRemote()).thenReturn(remote);
+        StandardWebSocketSession session = new StandardWebSocketSession(new HttpHeaders(), new HashMap<>(), null,
+                null);
+        session.initializeNativeSession(nativeSession);
+
+        BufferedSessionSender out = new BufferedSessionSender(session, tasks::add,
+                outbound(1024, OverflowPolicy.CLOSE));
+        out.send("a");
+        out.send("b");
+        runTasks();
+        // "a" is still being written; "b" waits without holding a thread
+        assertThat(sent).containsExactly("a");
+        assertThat(tasks).isEmpty();
+
+        pending.get(0).onResult(new SendResult());
+        runTasks();
+        assertThat(sent).containsExactly("a", "b");
+
+        pending.get(1).onResult(new SendResult(new IOException("reset")));
+        assertThat(out.isClosed()).isTrue();
+        verify(nativeSession, never()).getBasicRemote();
+    }
+}
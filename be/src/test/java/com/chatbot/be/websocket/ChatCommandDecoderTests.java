@@ -0,0 +1,130 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+class ChatCommandDecoderTests {
+
+    private static final TypeReference<List<Object>> ARRAY = new TypeReference<>() {
+    };
+
+    private final ChatCommandDecoder decoder = new ChatCommandDecoder(1024, 64);
+
+    @Test
+    void decodesStartAndCancel() {
+        ChatCommand start = decoder.decode(
+                "{\"requestId\": \"r-1\", \"message\": \"Học phí?\", \"extra\": {\"a\": [1, 2]}, \"conversationId\": 7}");
+        assertThat(start).isEqualTo(new ChatCommand(ChatCommand.Type.START, "r-1", "Học phí?", 7));
+        assertThat(decoder.decode("{\"message\": \"hi\", \"timeoutMs\": 2500}").timeoutMillis()).isEqualTo(2500);
+
+        ChatCommand cancel = decoder.decode("{\"requestId\": \"r-1\", \"cancel\": true}");
+        assertThat(cancel.type()).isEqualTo(ChatCommand.Type.CANCEL);
+        assertThat(cancel.requestId()).isEqualTo("r-1");
+    }
+
+    @Test
+    void startWithoutRequestIdLeavesItToTheHandler() {
+        assertThat(decoder.decode("{\"message\": \"hi\", \"requestId\": \"\"}").requestId()).isNull();
+    }
+
+    @Test
+    void rejectsMalformedAndOversizedFrames() {
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode("not json"));
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode("[1]"));
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode("{\"cancel\": true}"));
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode("{\"message\": 42}"));
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode("{\"message\": \"" + "x".repeat(65) + "\"}"));
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode(" ".repeat(1025)));
+    }
+
+    @Test
+    void controlFramesEscapeRequestIds() {
+        assertThat(ControlFrames.done(ControlFrames.requestId("r-1"))).asString(StandardCharsets.UTF_8)
+                .isEqualTo("{\"requestId\": \"r-1\", \"status\": \"done\"}");
+        assertThat(ControlFrames.cancelled(ControlFrames.requestId("a\"b"))).asString(StandardCharsets.UTF_8)
+                .isEqualTo("{\"requestId\": \"a\\\"b\", \"status\": \"cancelled\"}");
+        assertThat(ControlFrames.error(ControlFrames.requestId("Học"), "too_many_streams")).asString(StandardCharsets.UTF_8)
+                .isEqualTo("{\"requestId\": \"Học\", \"status\": \"error\", \"error\": \"too_many_streams\"}");
+        assertThat(ControlFrames.rateLimited(ControlFrames.requestId("r-1"), 250)).asString(StandardCharsets.UTF_8).isEqualTo(
+                "{\"requestId\": \"r-1\", \"status\": \"error\", \"error\": \"rate_limited\", \"retryAfterMs\": 250}");
+        assertThat(ControlFrames.deadlineExceeded(ControlFrames.requestId("r-1"))).asString(StandardCharsets.UTF_8)
+                .isEqualTo("{\"requestId\": \"r-1\", \"status\": \"deadline_exceeded\"}");
+        assertThat(ControlFrames.started(ControlFrames.requestId("r-1"), "t-1")).asString(StandardCharsets.UTF_8)
+                .isEqualTo("{\"requestId\": \"r-1\", \"status\": \"started\", \"resumeToken\": \"t-1\"}");
+    }
+
+    @Test
+    void decodesCborFramesAndEncodesTokens() throws Exception {
+        ObjectMapper cbor = new CBORMapper();
+        ChatCommand start = decoder.decode(cbor.writeValueAsBytes(List.of(0, 3, "Học phí?", 7)));
+        assertThat(start).isEqualTo(new ChatCommand(ChatCommand.Type.START, null, "Học phí?", 7, 3, 0));
+        assertThat(decoder.decode(cbor.writeValueAsBytes(List.of(0, 3, "hi", 7, "r-9"))).requestId()).isEqualTo("r-9");
+        assertThat(decoder.decode(cbor.writeValueAsBytes(Arrays.asList(0, 3, "hi", 7, null, 2500)))
+                .timeoutMillis()).isEqualTo(2500);
+        ChatCommand resume = decoder.decode(cbor.writeValueAsBytes(List.of(6, 4, "r-9", 12, "t-1")));
+        assertThat(resume).isEqualTo(new ChatCommand(ChatCommand.Type.RESUME, "r-9", null, 1, 4, 12, 0, "t-1"));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> decoder.decode(cbor.writeValueAsBytes(List.of(6, 4, "r-9", 12))));
+        assertThat(decoder.decode(cbor.writeValueAsBytes(List.of(1, 3))).type()).isEqualTo(ChatCommand.Type.CANCEL);
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode(cbor.writeValueAsBytes(List.of(9, 3))));
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode(new byte[] { 1, 2, 3 }));
+
+        BinaryMessage tokens = (BinaryMessage) new CborStreamEncoder(3).tokens(5,
+                List.of("{\"request_id\": \"x\", \"chunk\": \"Xin\"}", "{\"chunk\": \" chào\"}", "{\"done\": true}"))
+                .get(0);
+        assertThat(cbor.readValue(tokens.getPayload().array(), ARRAY)).isEqualTo(List.of(2, 3, 7, "Xin", " chào"));
+
+        List<WebSocketMessage<?>> failed = new CborStreamEncoder(3).tokens(5,
+                List.of("{\"chunk\": \"Xin\"}", "{\"error\": \"boom\"}", "{\"chunk\": \"late\"}"));
+        assertThat(failed).hasSize(2);
+        assertThat(failed).extracting(m -> cbor.readValue(((BinaryMessage) m).getPayload().array(), ARRAY))
+                .containsExactly(List.of(2, 3, 5, "Xin"), List.of(5, 3, "boom"));
+    }
+
+    @Test
+    void jsonFramesAreOneEventOrABatchArray() throws Exception {
+        List<String> events = List.of("{\"request_id\": \"r-1\", \"chunk\": \"Xin\"}",
+                "{\"request_id\": \"r-1\", \"chunk\": \" chào\"}");
+        assertThat(ChatProtocol.JSON.encoder("r-1", 0).tokens(4, events))
+                .extracting(m -> ((TextMessage) m).getPayload())
+                .containsExactly("{\"seq\": 4, \"request_id\": \"r-1\", \"chunk\": \"Xin\"}",
+                        "{\"seq\": 5, \"request_id\": \"r-1\", \"chunk\": \" chào\"}");
+
+        List<WebSocketMessage<?>> batch = ChatProtocol.of("chat.v1.json-batch").encoder("r-1", 0).tokens(4, events);
+        assertThat(batch).hasSize(1);
+        JsonNode array = new ObjectMapper().readTree(((TextMessage) batch.get(0)).getPayload());
+        assertThat(array.isArray()).isTrue();
+        assertThat(array.findValuesAsText("chunk")).containsExactly("Xin", " chào");
+        assertThat(array.get(1).get("seq").asLong()).isEqualTo(5);
+    }
+
+    @Test
+    void decodesResumeAndNumbersEvents() {
+        ChatCommand resume = decoder.decode(
+                "{\"resume\": true, \"requestId\": \"r-1\", \"lastSeq\": 41, \"resumeToken\": \"t-1\"}");
+        assertThat(resume.type()).isEqualTo(ChatCommand.Type.RESUME);
+        assertThat(resume.lastSeq()).isEqualTo(41);
+        assertThat(resume.resumeToken()).isEqualTo("t-1");
+        assertThatIllegalArgumentException().isThrownBy(() -> decoder.decode("{\"resume\": true, \"lastSeq\": 1}"));
+        assertThatIllegalArgumentException().isThrownBy(
+                () -> decoder.decode("{\"resume\": true, \"requestId\": \"r-1\", \"lastSeq\": 1}"));
+
+        assertThat(SseEvents.withSeq("{\"chunk\": \"a\"}", 42)).isEqualTo("{\"seq\": 42, \"chunk\": \"a\"}");
+        assertThat(SseEvents.withSeq("{ }", 1)).isEqualTo("{\"seq\": 1}");
+        assertThat(SseEvents.withSeq("[DONE]", 1)).isEqualTo("[DONE]");
+    }
+}
@@ -0,0 +1,76 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.chatbot.be.model.Message;
+import com.chatbot.be.service.MessageWriteBehind;
+import com.chatbot.be.upstream.UpstreamBalancer;
+import com.chatbot.be.upstream.UpstreamScheduler;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+class ChatStreamsTests {
+
+    private final MessageWriteBehind writeBehind = mock(MessageWriteBehind.class);
+    private final ChatStreams streams = new ChatStreams(mock(UpstreamBalancer.class),
+            mock(UpstreamScheduler.class), writeBehind);
+
+    ChatStreamsTests() {
+        when(writeBehind.enqueue(any())).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+    }
+
+    private Message persisted(SignalType signal, String... events) {
+        StreamTranscript transcript = streams.transcript("q", 7);
+        for (String event : events) {
+            transcript.append(event);
+        }
+        streams.persist(transcript, signal);
+        ArgumentCaptor<Message> stored = ArgumentCaptor.forClass(Message.class);
+        verify(writeBehind).enqueue(stored.capture());
+        return stored.getValue();
+    }
+
+    @Test
+    void storesACompletedAnswerAsWhole() {
+        Message m = persisted(SignalType.ON_COMPLETE, "{\"chunk\": \"xin\"}", "{\"chunk\": \"chào\"}",
+                "{\"done\": true}");
+        assertThat(m.getAnswer()).isEqualTo("xin chào");
+        assertThat(m.isPartial()).isFalse();
+        assertThat(m.getConversationId()).isEqualTo(7);
+    }
+
+    @Test
+    void storesAnAnswerPythonCutShortAsPartial() {
+        assertThat(persisted(SignalType.ON_COMPLETE, "{\"chunk\": \"xin\"}",
+                "{\"error\": \"deadline_exceeded\"}").isPartial()).isTrue();
+    }
+
+    @Test
+    void storesAnAnswerPythonCancelledAsPartial() {
+        assertThat(persisted(SignalType.ON_COMPLETE, "{\"chunk\": \"xin\"}",
+                "{\"cancelled\": true}").isPartial()).isTrue();
+    }
+
+    @Test
+    void storesAnAnswerEndedByCancelAsPartial() {
+        assertThat(persisted(SignalType.CANCEL, "{\"chunk\": \"xin\"}").isPartial()).isTrue();
+    }
+
+    @Test
+    void doesNotStoreAnEmptyAnswer() {
+        StreamTranscript transcript = streams.transcript("q", 7);
+        transcript.append("{\"error\": \"rag_error\", \"detail\": \"down\"}");
+        streams.persist(transcript, SignalType.ON_COMPLETE);
+        verify(writeBehind, never()).enqueue(any());
+        assertThat(transcript.finish(false)).isNull();
+    }
+}
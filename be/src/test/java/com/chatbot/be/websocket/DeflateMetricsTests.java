@@ -0,0 +1,62 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DeflateMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private DeflateMetrics metrics(double sampleRate) {
+        WebSocketProperties props = new WebSocketProperties();
+        props.getCompression().setMetricsSampleRate(sampleRate);
+        return new DeflateMetrics(props, registry);
+    }
+
+    private static WebSocketSession deflateSession(Map<String, String> params) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getExtensions())
+                .thenReturn(List.of(new WebSocketExtension(DeflateUpgradeStrategy.PERMESSAGE_DEFLATE, params)));
+        return session;
+    }
+
+    @Test
+    void samplesWholeSessions() {
+        assertThat(metrics(0).forSession(deflateSession(Map.of()))).isNull();
+
+        DeflateSampler sampler = metrics(1).forSession(deflateSession(Map.of()));
+        for (int i = 0; i < 200; i++) {
+            sampler.sample(new TextMessage("{\"seq\": " + i + ", \"request_id\": \"r-1\", \"chunk\": \" học\"}"));
+        }
+        sampler.finish();
+        DistributionSummary ratio = registry.find("chatbot.ws.deflate.ratio").summary();
+        assertThat(ratio.count()).isEqualTo(1);
+        // every frame but the first compresses against the ones before it
+        assertThat(ratio.totalAmount()).isGreaterThan(3);
+    }
+
+    @Test
+    void withoutContextTakeoverFramesCompressAlone() {
+        DeflateSampler sampler = metrics(1).forSession(
+                deflateSession(Map.of(DeflateUpgradeStrategy.SERVER_NO_CONTEXT_TAKEOVER, "")));
+        for (int i = 0; i < 200; i++) {
+            sampler.sample(new TextMessage("{\"seq\": " + i + ", \"request_id\": \"r-1\", \"chunk\": \" học\"}"));
+        }
+        sampler.finish();
+        assertThat(registry.find("chatbot.ws.deflate.ratio").summary().totalAmount()).isLessThan(1.5);
+    }
+}
@@ -0,0 +1,251 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.socket.HandshakeInfo;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import com.chatbot.be.config.RateLimitProperties;
+import com.chatbot.be.config.UpstreamProperties;
+import com.chatbot.be.config.WebSocketProperties;
+import com.chatbot.be.ratelimit.ChatRateLimiter;
+import com.chatbot.be.upstream.Deadlines;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.subscriber.TestSubscriber;
+
+class ReactiveChatWebSocketHandlerTests {
+
+    private static final CBORMapper CBOR = new CBORMapper();
+
+    private final NettyDataBufferFactory buffers = new NettyDataBufferFactory(new UnpooledByteBufAllocator(false));
+    private final WebSocketProperties properties = new WebSocketProperties();
+    private final ChatStreams chatStreams = mock(ChatStreams.class);
+    private final Sinks.Many<WebSocketMessage> inbound = Sinks.many().unicast().onBackpressureBuffer();
+    // every event buffer handed to the handler
+    private final List<DataBuffer> events = new CopyOnWriteArrayList<>();
+    private final List<WebSocketMessage> pings = new CopyOnWriteArrayList<>();
+    private WebSocketSession session;
+
+    @BeforeEach
+    void transcripts() {
+        AnswerBufferPool pool = new AnswerBufferPool(4, 1024);
+        when(chatStreams.transcript(any(), anyLong()))
+                .thenAnswer(inv -> new StreamTranscript(pool, inv.getArgument(0), inv.getArgument(1)));
+    }
+
+    private TestSubscriber<WebSocketMessage> connect(long initialRequest) {
+        return connect(null, initialRequest);
+    }
+
+    /** Runs the handler and reads its frames, asking for {@code initialRequest} of them. */
+    private TestSubscriber<WebSocketMessage> connect(String protocol, long initialRequest) {
+        RateLimitProperties rateLimits = new RateLimitProperties();
+        rateLimits.setEnabled(false);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReactiveChatWebSocketHandler handler = new ReactiveChatWebSocketHandler(chatStreams, properties,
+                new ChatRateLimiter(rateLimits, registry), new Deadlines(new UpstreamProperties(), registry), registry);
+
+        TestSubscriber<WebSocketMessage> frames = TestSubscriber.builder().initialRequest(initialRequest).build();
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.getHandshakeInfo()).thenReturn(
+                new HandshakeInfo(URI.create("ws://localhost/ws/chat"), new HttpHeaders(), Mono.empty(), protocol));
+        when(session.bufferFactory()).thenReturn(buffers);
+        when(session.binaryMessage(any())).thenAnswer(inv -> new WebSocketMessage(WebSocketMessage.Type.BINARY,
+                inv.<Function<DataBufferFactory, DataBuffer>>getArgument(0).apply(buffers)));
+        when(session.receive()).thenReturn(inbound.asFlux());
+        when(session.pingMessage(any())).thenAnswer(inv -> new WebSocketMessage(WebSocketMessage.Type.PING,
+                inv.<Function<DataBufferFactory, DataBuffer>>getArgument(0).apply(buffers)));
+        when(session.close(any())).thenReturn(Mono.empty());
+        // the frames are sent first, then the pings
+        AtomicInteger sends = new AtomicInteger();
+        when(session.send(any())).thenAnswer(inv -> {
+            Publisher<WebSocketMessage> out = inv.getArgument(0);
+            if (sends.getAndIncrement() > 0) {
+                return Flux.from(out).doOnNext(pings::add).then();
+            }
+            return Mono.fromRunnable(() -> out.subscribe(frames)).then(Mono.never());
+        });
+        handler.handle(session).subscribe();
+        return frames;
+    }
+
+    private void receive(String json) {
+        inbound.tryEmitNext(new WebSocketMessage(WebSocketMessage.Type.TEXT,
+                buffers.wrap(json.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private void receive(List<?> cbor) throws IOException {
+        inbound.tryEmitNext(new WebSocketMessage(WebSocketMessage.Type.BINARY,
+                buffers.wrap(CBOR.writeValueAsBytes(cbor))));
+    }
+
+    /** {@code count} token events for {@code requestId}, made as they are asked for. */
+    private Flux<DataBuffer> upstream(String requestId, int count, AtomicInteger emitted) {
+        return Flux.range(0, count).map(i -> {
+            emitted.incrementAndGet();
+            DataBuffer event = buffers.wrap(("{\"request_id\": \"" + requestId + "\", \"chunk\": \"t" + i + "\"}")
+                    .getBytes(StandardCharsets.UTF_8));
+            events.add(event);
+            return event;
+        });
+    }
+
+    /** The frame's text; the frame is released as Netty would once it is written. */
+    private static String text(WebSocketMessage frame) {
+        String text = frame.getPayloadAsText();
+        DataBufferUtils.release(frame.getPayload());
+        return text;
+    }
+
+    private static List<String> texts(TestSubscriber<WebSocketMessage> frames) {
+        return frames.getReceivedOnNext().stream().map(ReactiveChatWebSocketHandlerTests::text).toList();
+    }
+
+    @Test
+    void streamsTokensUntilTheClientCancels() {
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        Sinks.Many<DataBuffer> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        when(chatStreams.openEvents(eq("hi"), eq("r-1"), any(), any()))
+                .thenReturn(tokens.asFlux().doOnCancel(() -> upstreamCancelled.set(true)));
+        TestSubscriber<WebSocketMessage> frames = connect(Long.MAX_VALUE);
+
+        receive("{\"requestId\": \"r-1\", \"message\": \"hi\"}");
+        tokens.tryEmitNext(buffers.wrap("{\"request_id\": \"r-1\", \"chunk\": \"a\"}".getBytes(StandardCharsets.UTF_8)));
+        receive("{\"requestId\": \"r-1\", \"cancel\": true}");
+
+        assertThat(upstreamCancelled).isTrue();
+        assertThat(texts(frames)).containsExactly(
+                "{\"seq\": 1, \"request_id\": \"r-1\", \"chunk\": \"a\"}",
+                "{\"requestId\": \"r-1\", \"status\": \"cancelled\"}");
+    }
+
+    @Test
+    void cborCancelFindsTheStreamByItsStreamId() throws IOException {
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        when(chatStreams.openEvents(eq("hi"), eq("r-9"), any(), any()))
+                .thenReturn(Flux.<DataBuffer>never().doOnCancel(() -> upstreamCancelled.set(true)));
+        TestSubscriber<WebSocketMessage> frames = connect("chat.v1.cbor", Long.MAX_VALUE);
+
+        // started under the client's own requestId, cancelled by stream id
+        receive(List.of(0, 3, "hi", 7, "r-9"));
+        receive(List.of(1, 3));
+        receive(List.of(1, 3));
+
+        assertThat(upstreamCancelled).isTrue();
+        assertThat(frames.getReceivedOnNext()).hasSize(1);
+        WebSocketMessage cancelled = frames.getReceivedOnNext().get(0);
+        byte[] payload = new byte[cancelled.getPayload().readableByteCount()];
+        cancelled.getPayload().read(payload);
+        assertThat(CBOR.readValue(payload, List.class)).isEqualTo(List.of(4, 3));
+    }
+
+    @Test
+    void capsTheStreamsOfOneSession() {
+        properties.getReactive().setMaxStreamsPerSession(1);
+        when(chatStreams.openEvents(any(), anyString(), any(), any())).thenReturn(Flux.never());
+        TestSubscriber<WebSocketMessage> frames = connect(Long.MAX_VALUE);
+
+        receive("{\"requestId\": \"r-1\", \"message\": \"hi\"}");
+        receive("{\"requestId\": \"r-2\", \"message\": \"hi\"}");
+        receive("{\"requestId\": \"r-1\", \"cancel\": true}");
+        receive("{\"requestId\": \"r-3\", \"message\": \"hi\"}");
+        // r-2 never ran: nothing to cancel, nothing to answer
+        receive("{\"requestId\": \"r-2\", \"cancel\": true}");
+
+        // r-3 fits again once r-1 has ended
+        assertThat(texts(frames)).containsExactly(
+                "{\"requestId\": \"r-2\", \"status\": \"error\", \"error\": \"too_many_streams\"}",
+                "{\"requestId\": \"r-1\", \"status\": \"cancelled\"}");
+    }
+
+    @Test
+    void pingsAndReapsASessionThatStopsAnswering() throws InterruptedException {
+        properties.getHeartbeat().setPingInterval(Duration.ofMillis(50));
+        properties.getHeartbeat().setIdleTimeout(Duration.ZERO);
+        TestSubscriber<WebSocketMessage> frames = connect(Long.MAX_VALUE);
+
+        // pongs keep the session alive and are not taken for commands
+        for (int i = 0; i < 15; i++) {
+            inbound.tryEmitNext(new WebSocketMessage(WebSocketMessage.Type.PONG, buffers.wrap(new byte[0])));
+            Thread.sleep(20);
+        }
+        verify(session, never()).close(any());
+        assertThat(pings).isNotEmpty()
+                .allMatch(ping -> ping.getType() == WebSocketMessage.Type.PING);
+        assertThat(frames.getReceivedOnNext()).isEmpty();
+
+        verify(session, timeout(1000)).close(argThat(status -> status.getCode() == 4500));
+    }
+
+    @Test
+    void slowReaderStopsTheUpstream() {
+        AtomicInteger emitted = new AtomicInteger();
+        when(chatStreams.openEvents(any(), eq("r-1"), any(), any())).thenReturn(upstream("r-1", 10_000, emitted));
+        TestSubscriber<WebSocketMessage> frames = connect(1);
+
+        receive("{\"requestId\": \"r-1\", \"message\": \"hi\"}");
+
+        assertThat(frames.getReceivedOnNext()).hasSize(1);
+        // no more than the operators' prefetch is read ahead of the client
+        assertThat(emitted.get()).isLessThan(1_000);
+
+        frames.request(Long.MAX_VALUE);
+        List<String> texts = texts(frames);
+        assertThat(emitted).hasValue(10_000);
+        assertThat(texts).hasSize(10_001);
+        assertThat(texts.get(9_999)).isEqualTo("{\"seq\": 10000, \"request_id\": \"r-1\", \"chunk\": \"t9999\"}");
+        assertThat(texts.get(10_000)).isEqualTo("{\"requestId\": \"r-1\", \"status\": \"done\"}");
+    }
+
+    @Test
+    void releasesBuffersReadAheadWhenTheConnectionGoes() {
+        AtomicInteger emitted = new AtomicInteger();
+        when(chatStreams.openEvents(any(), eq("r-1"), any(), any())).thenReturn(upstream("r-1", 10_000, emitted));
+        TestSubscriber<WebSocketMessage> frames = connect(2);
+
+        receive("{\"requestId\": \"r-1\", \"message\": \"hi\"}");
+        assertThat(texts(frames)).hasSize(2);
+        assertThat(emitted.get()).isGreaterThan(2);
+
+        frames.cancel();
+        assertThat(events).allSatisfy(event ->
+                assertThat(((NettyDataBuffer) event).getNativeBuffer().refCnt()).isZero());
+    }
+}
@@ -0,0 +1,68 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ResumableStreamTests {
+
+    @Test
+    void resumeReplaysMissedTailThenFollowsLiveStream() {
+        ResumableStream stream = new ResumableStream("r-1", "t-1", 3);
+        StreamOutput first = mock(StreamOutput.class);
+        assertThat(stream.attach(first, 0)).isTrue();
+        stream.onEvent("a");
+        stream.onEvent("b");
+        assertThat(stream.detach(first)).isPositive();
+        stream.onEvent("c");
+        stream.onEvent("d");
+
+        StreamOutput second = mock(StreamOutput.class);
+        assertThat(stream.attach(second, 2)).isTrue();
+        verify(second).replay(3, List.of("c", "d"));
+        stream.onEvent("e");
+        stream.onComplete();
+        verify(second).event(5, "e");
+        verify(second).complete();
+        verify(first, never()).event(3, "c");
+    }
+
+    @Test
+    void resumeFailsOnceMissedEventsAreEvicted() {
+        ResumableStream stream = new ResumableStream("r-1", "t-1", 2);
+        for (String e : List.of("a", "b", "c", "d")) {
+            stream.onEvent(e);
+        }
+        StreamOutput late = mock(StreamOutput.class);
+        assertThat(stream.attach(late, 1)).isFalse();
+        assertThat(stream.attach(late, 5)).isFalse();
+        verify(late, never()).replay(anyLong(), anyList());
+        assertThat(stream.attach(late, 2)).isTrue();
+        verify(late).replay(3, List.of("c", "d"));
+    }
+
+    @Test
+    void onlyTheResumeTokenFindsAStream() {
+        ResumableStreams streams = new ResumableStreams(new WebSocketProperties(), new SimpleMeterRegistry());
+        ResumableStream mine = streams.open("r-1");
+        // another client starting the same requestId gets a stream of its own
+        ResumableStream theirs = streams.open("r-1");
+        assertThat(mine.resumeToken()).isNotEqualTo(theirs.resumeToken());
+
+        assertThat(streams.get("r-1", mine.resumeToken())).isSameAs(mine);
+        assertThat(streams.get("r-1", theirs.resumeToken())).isSameAs(theirs);
+        assertThat(streams.get("r-2", mine.resumeToken())).isNull();
+        assertThat(streams.get("r-1", "guessed")).isNull();
+    }
+}
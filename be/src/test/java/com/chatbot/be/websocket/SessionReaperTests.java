@@ -0,0 +1,85 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.chatbot.be.config.WebSocketProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.scheduler.Schedulers;
+
+class SessionReaperTests {
+
+    private final StreamRegistry streams = new StreamRegistry(new SimpleMeterRegistry());
+    private SessionReaper reaper;
+
+    @AfterEach
+    void stop() {
+        reaper.stop();
+    }
+
+    private SessionReaper reaper(Duration pingInterval, Duration idleTimeout) {
+        WebSocketProperties props = new WebSocketProperties();
+        props.getHeartbeat().setPingInterval(pingInterval);
+        props.getHeartbeat().setIdleTimeout(idleTimeout);
+        props.getHeartbeat().setTickDuration(Duration.ofMillis(10));
+        reaper = new SessionReaper(props, streams, Schedulers.immediate(), new SimpleMeterRegistry());
+        return reaper;
+    }
+
+    private static BufferedSessionSender sender(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        BufferedSessionSender out = mock(BufferedSessionSender.class);
+        when(out.session()).thenReturn(session);
+        return out;
+    }
+
+    @Test
+    void reapsSessionThatStopsAnsweringPings() throws Exception {
+        BufferedSessionSender out = sender("s1");
+        CompletableFuture<CloseStatus> reaped = new CompletableFuture<>();
+        reaper(Duration.ofMillis(50), Duration.ZERO).track(out, reaped::complete);
+
+        assertThat(reaped.get(2, TimeUnit.SECONDS)).isEqualTo(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(out, atLeastOnce()).send(any(PingMessage.class));
+    }
+
+    @Test
+    void idleSessionIsReapedOnlyWithoutStreams() throws Exception {
+        BufferedSessionSender out = sender("s2");
+        streams.register("s2", "r-1", () -> {
+        });
+        CompletableFuture<CloseStatus> reaped = new CompletableFuture<>();
+        SessionReaper.Session session = reaper(Duration.ofMillis(40), Duration.ofMillis(100)).track(out, reaped::complete);
+
+        // answer every ping; the running stream keeps the session from being idle
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(20);
+            session.pong();
+        }
+        assertThat(reaped).isNotDone();
+
+        streams.remove("s2", "r-1", null);
+        streams.closeSession("s2");
+        for (int i = 0; i < 20 && !reaped.isDone(); i++) {
+            Thread.sleep(20);
+            session.pong();
+        }
+        assertThat(reaped.get(1, TimeUnit.SECONDS)).isEqualTo(SessionReaper.IDLE);
+    }
+}
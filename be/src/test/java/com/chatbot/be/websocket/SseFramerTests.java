@@ -0,0 +1,103 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class SseFramerTests {
+
+    private static final String BODY = ": keep-alive\r\n"
+            + "data: {\"chunk\": \"Học phí\"}\n\n"
+            + "event: token\r\n"
+            + "data: {\"chunk\":\r\n"
+            + "data:  \"trường\"}\r\n\r\n"
+            + "id: 7\n\n"
+            + "data\n\n"
+            + "data: {\"done\": true}";
+
+    private final NettyDataBufferFactory netty = new NettyDataBufferFactory(new UnpooledByteBufAllocator(false));
+
+    /** {@link #BODY} cut every {@code size} bytes, splitting multi-byte characters and CR LF pairs. */
+    private List<DataBuffer> chunks(int size) {
+        byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += size) {
+            chunks.add(netty.wrap(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + size))));
+        }
+        return chunks;
+    }
+
+    private static String decode(DataBuffer event) {
+        String text = event.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(event);
+        return text;
+    }
+
+    @Test
+    void framesEventsAcrossChunkBoundariesAndReleasesBuffers() {
+        for (int size = 1; size <= 64; size++) {
+            List<DataBuffer> chunks = chunks(size);
+            List<String> events = SseFramer.frame(Flux.fromIterable(chunks), 1024)
+                    .map(SseFramerTests::decode)
+                    .collectList()
+                    .block();
+            assertThat(events).as("chunks of %d bytes", size).containsExactly(
+                    "{\"chunk\": \"Học phí\"}", "{\"chunk\":\n \"trường\"}", "", "{\"done\": true}");
+            assertThat(chunks).allSatisfy(c -> assertThat(((NettyDataBuffer) c).getNativeBuffer().refCnt()).isZero());
+        }
+    }
+
+    @Test
+    void releasesHeldSlicesOnCancelAndOversizedEvents() {
+        List<DataBuffer> chunks = chunks(5);
+        StepVerifier.create(SseFramer.frame(Flux.fromIterable(chunks), 1024).map(SseFramerTests::decode), 1)
+                .expectNext("{\"chunk\": \"Học phí\"}")
+                .thenCancel()
+                .verify();
+        assertThat(chunks).allSatisfy(c -> assertThat(((NettyDataBuffer) c).getNativeBuffer().refCnt()).isZero());
+
+        List<DataBuffer> oversized = chunks(7);
+        StepVerifier.create(SseFramer.frame(Flux.fromIterable(oversized), 8))
+                .expectError(DataBufferLimitException.class)
+                .verify();
+        assertThat(oversized).allSatisfy(c -> assertThat(((NettyDataBuffer) c).getNativeBuffer().refCnt()).isZero());
+    }
+
+    @Test
+    void prefixesSeqWithoutCopyingTheEvent() {
+        DataBuffer event = DefaultDataBufferFactory.sharedInstance
+                .wrap("{ \"chunk\": \"a\"}".getBytes(StandardCharsets.UTF_8));
+        assertThat(decode(SseEvents.withSeq(event, 42))).isEqualTo("{\"seq\": 42, \"chunk\": \"a\"}");
+        DataBuffer done = netty.wrap("[DONE]".getBytes(StandardCharsets.UTF_8));
+        assertThat(SseEvents.withSeq(done, 1)).isSameAs(done);
+        DataBufferUtils.release(done);
+    }
+
+    @Test
+    void splicesTheSubscribersRequestIdIntoTheEvent() {
+        String leader = "{\"request_id\": \"r-10\", \"chunk\": \"a\"}";
+        assertThat(SseEvents.withRequestId(leader, "r-10")).isSameAs(leader);
+        // r-1 is a prefix of the leader's id, not the same id
+        assertThat(SseEvents.withRequestId(leader, "r-1")).isEqualTo("{\"request_id\": \"r-1\", \"chunk\": \"a\"}");
+        assertThat(SseEvents.withRequestId("{\"chunk\": \"r-10\", \"request_id\": null}", "r-10"))
+                .isEqualTo("{\"chunk\": \"r-10\", \"request_id\": \"r-10\"}");
+        assertThat(SseEvents.withRequestId("{ \"chunk\": \"a\"}", "say \"hi\""))
+                .isEqualTo("{\"request_id\": \"say \\\"hi\\\"\", \"chunk\": \"a\"}");
+        assertThat(SseEvents.withRequestId("[DONE]", "r-1")).isEqualTo("[DONE]");
+    }
+}
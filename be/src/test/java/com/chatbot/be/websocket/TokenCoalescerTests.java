@@ -0,0 +1,91 @@
+package com.chatbot.be.websocket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+class TokenCoalescerTests {
+
+    private static final Duration WINDOW = Duration.ofMillis(15);
+
+    // each frame as "firstSeq:event,event"
+    private final List<String> sent = new ArrayList<>();
+    private final VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+
+    private TokenCoalescer coalescer(long windowNanos, int maxChars) {
+        StreamEncoder encoder = mock(StreamEncoder.class);
+        when(encoder.tokens(anyLong(), anyList())).thenAnswer(inv -> List.of(
+                new TextMessage(inv.getArgument(0) + ":" + String.join(",", inv.<List<String>>getArgument(1)))));
+        BufferedSessionSender out = mock(BufferedSessionSender.class);
+        doAnswer(inv -> sent.add(((TextMessage) inv.getArgument(0)).getPayload()))
+                .when(out).sendToken(any(WebSocketMessage.class));
+        return new TokenCoalescer(out, encoder, timer, windowNanos, maxChars);
+    }
+
+    @Test
+    void sendsTheFirstTokenAtOnceAndMergesTheRestUntilTheWindowEnds() {
+        TokenCoalescer frames = coalescer(WINDOW.toNanos(), 100);
+        frames.add(1, "a");
+        assertThat(sent).containsExactly("1:a");
+
+        frames.add(2, "b");
+        frames.add(3, "c");
+        timer.advanceTimeBy(WINDOW.minusMillis(1));
+        assertThat(sent).containsExactly("1:a");
+        timer.advanceTimeBy(Duration.ofMillis(1));
+        assertThat(sent).containsExactly("1:a", "2:b,c");
+
+        // the next frame starts numbering at its own first event
+        frames.add(4, "d");
+        timer.advanceTimeBy(WINDOW);
+        assertThat(sent).containsExactly("1:a", "2:b,c", "4:d");
+    }
+
+    @Test
+    void flushesOnceMaxCharsArePending() {
+        TokenCoalescer frames = coalescer(WINDOW.toNanos(), 4);
+        frames.add(1, "a");
+        frames.add(2, "bb");
+        frames.add(3, "cc");
+        assertThat(sent).containsExactly("1:a", "2:bb,cc");
+
+        // the window timer of the flushed frame does not fire into the next one
+        frames.add(4, "d");
+        timer.advanceTimeBy(WINDOW);
+        assertThat(sent).containsExactly("1:a", "2:bb,cc", "4:d");
+    }
+
+    @Test
+    void flushSendsWhatIsPendingBeforeTheClosingFrame() {
+        TokenCoalescer frames = coalescer(WINDOW.toNanos(), 100);
+        frames.add(1, "a");
+        frames.add(2, "b");
+        frames.flush();
+        assertThat(sent).containsExactly("1:a", "2:b");
+        frames.flush();
+        timer.advanceTimeBy(WINDOW);
+        assertThat(sent).containsExactly("1:a", "2:b");
+    }
+
+    @Test
+    void sendsEveryTokenAtOnceWithoutAWindow() {
+        TokenCoalescer frames = coalescer(0, 100);
+        frames.add(1, "a");
+        frames.add(2, "b");
+        assertThat(sent).containsExactly("1:a", "2:b");
+    }
+}
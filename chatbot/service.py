@@ -110,6 +110,14 @@ def llm_stream():
         return jsonify({"error": "Empty message"}), 400
 
     request_id = payload.get('request_id') or str(uuid.uuid4())
+    # milliseconds the caller will still wait; past that nobody reads the answer
+    deadline = None
+    try:
+        timeout_ms = int(request.headers.get('X-Request-Timeout', ''))
+        if timeout_ms > 0:
+            deadline = time.monotonic() + timeout_ms / 1000.0
+    except ValueError:
+        pass
     cancel_event = threading.Event()
     _active_streams[request_id] = cancel_event
 
@@ -150,6 +158,9 @@ def llm_stream():
                 if cancel_event.is_set():
                     yield f"data: {json.dumps({'request_id': request_id, 'cancelled': True})}\n\n"
                     return
+                if deadline is not None and time.monotonic() > deadline:
+                    yield f"data: {json.dumps({'request_id': request_id, 'error': 'deadline_exceeded'})}\n\n"
+                    return
                 payload_obj = {'request_id': request_id, 'chunk': token}
                 yield f"data: {json.dumps(payload_obj)}\n\n"
                 time.sleep(0.05)  # pause between tokens to simulate streaming
@@ -172,6 +183,19 @@ def llm_cancel():
     payload = request.get_json(silent=True)
     if not payload or not isinstance(payload, dict):
         return jsonify({"error": "Invalid JSON payload"}), 400
+    # the backend batches cancels: {"request_ids": [...]}; unknown ids have already finished
+    request_ids = payload.get('request_ids')
+    if isinstance(request_ids, list):
+        cancelled, unknown = [], []
+        for rid in request_ids:
+            ev = _active_streams.get(rid)
+            if ev:
+                ev.set()
+                cancelled.append(rid)
+            else:
+                unknown.append(rid)
+        return jsonify({'cancelled': cancelled, 'unknown': unknown}), 200
+
     request_id = payload.get('request_id')
     if not request_id:
         return jsonify({"error": "Missing request_id"}), 400